@@ -0,0 +1,111 @@
+package testCases;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import toberumono.lexer.BasicDescender;
+import toberumono.lexer.BasicLexer;
+import toberumono.lexer.BasicRule;
+import toberumono.lexer.util.DefaultIgnorePatterns;
+import toberumono.lexer.util.NumberParsers;
+import toberumono.structures.sexpressions.BasicConsType;
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+
+import static toberumono.lexer.util.NumberPatterns.*;
+
+/**
+ * Lexes random inputs with a single {@link BasicLexer} shared by many threads while another thread keeps adding and removing
+ * rules, and checks every result against one produced by a private {@link BasicLexer#clone() clone}.
+ * 
+ * @author Toberumono
+ */
+public class ConcurrencyStressTest {
+	private static final String ALPHABET = "0123456789. abc()[]\t\n";
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            optionally, the number of threads followed by the number of inputs that each thread lexes
+	 * @throws Exception
+	 *             if a worker thread fails unexpectedly
+	 */
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+		int inputs = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
+		final ConsType integer = new BasicConsType("Integer");
+		final ConsType decimal = new BasicConsType("Decimal");
+		lexer.addRule("Integer", new BasicRule(INTEGER.getPattern(), NumberParsers.intAction(integer)));
+		lexer.addRule("Decimal", new BasicRule(DOUBLE.getPattern(), NumberParsers.doubleAction(decimal)));
+		lexer.addRule("Word", new BasicRule(Pattern.compile("[a-z]+"), new BasicConsType("Word")));
+		lexer.addDescender("Parentheses", new BasicDescender("(", ")", new BasicConsType("Parentheses", "(", ")")));
+		lexer.addDescender("Brackets", new BasicDescender("[", "]", new BasicConsType("Brackets", "[", "]")));
+		BasicLexer reference = lexer.clone();
+		
+		AtomicBoolean done = new AtomicBoolean(false);
+		Thread mutator = new Thread(() -> { //These rules never match the inputs, so they must not change any results
+			for (int i = 0; !done.get(); i++) {
+				lexer.addRule("Extra" + i, new BasicRule(Pattern.compile("#" + i + "#", Pattern.LITERAL), new BasicConsType("Extra")));
+				if (i >= 16)
+					lexer.removeRule("Extra" + (i - 16));
+			}
+		});
+		mutator.start();
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Integer>> failures = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			final long seed = t;
+			failures.add(pool.submit((Callable<Integer>) () -> {
+				Random random = new Random(seed);
+				BasicLexer local = reference.clone(); //A private clone produces the expected results
+				int failed = 0;
+				for (int i = 0; i < inputs; i++) {
+					String input = randomInput(random);
+					String expected = describe(local, input), actual = describe(lexer, input);
+					if (!expected.equals(actual)) {
+						if (failed++ < 5)
+							System.out.println("Mismatch for \"" + input + "\": expected " + expected + " but got " + actual);
+					}
+				}
+				return failed;
+			}));
+		}
+		int failed = 0;
+		for (Future<Integer> f : failures)
+			failed += f.get();
+		pool.shutdown();
+		done.set(true);
+		mutator.join();
+		System.out.println((threads * inputs) + " inputs on " + threads + " threads in " + (System.nanoTime() - start) / 1000000 + "ms: " + failed + " mismatches");
+		if (failed > 0)
+			System.exit(1);
+	}
+	
+	private static String randomInput(Random random) {
+		StringBuilder input = new StringBuilder();
+		for (int i = random.nextInt(40) + 1; i > 0; i--)
+			input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		return input.toString();
+	}
+	
+	private static String describe(BasicLexer lexer, String input) {
+		try {
+			ConsCell result = lexer.lex(input);
+			return result == null ? "null" : result.structureString();
+		}
+		catch (Exception e) {
+			return e.getClass().getSimpleName();
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package testCases;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import toberumono.lexer.BasicDescender;
+import toberumono.lexer.BasicLanguage;
+import toberumono.lexer.BasicLexer;
+import toberumono.lexer.BasicRule;
+import toberumono.lexer.base.LazyDescent;
+import toberumono.lexer.util.DefaultIgnorePatterns;
+import toberumono.structures.sexpressions.BasicConsType;
+import toberumono.structures.sexpressions.ConsCell;
+
+/**
+ * Checks lazily lexed, skipped, and selectively lexed descents against {@link BasicLexer#lex(String)} on random inputs:
+ * <ul>
+ * <li>Forcing every {@link LazyDescent} produced by a lazy {@link BasicDescender} must produce the same tree (or the same
+ * exception) as lexing the input with a normal {@link BasicDescender}.</li>
+ * <li>Skipping a {@link BasicDescender} must produce the same tokens as lexing the input with each skipped descent replaced
+ * by a space.</li>
+ * <li>{@link BasicLexer#lexSelective(String, java.util.Collection)} must produce the tokens of {@link BasicLexer#lex(String)}
+ * that it was asked to keep, with the kept contents of unkept descents spliced into their enclosing descents.</li>
+ * </ul>
+ * 
+ * @author Toberumono
+ */
+public class DescentModesTest {
+	private static final String ALPHABET = "ab1 ()[]{}\"#\n@  ";
+	private static final List<String> NAMES = Arrays.asList("Word", "Integer", "String", "Any", "Parentheses", "Brackets", "Braces");
+	private static final List<String> DESCENDERS = NAMES.subList(4, NAMES.size());
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            optionally, the number of inputs
+	 */
+	public static void main(String[] args) {
+		int inputs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		BasicLexer reference = create(false), lazy = create(true);
+		BasicLexer skipping = reference.clone();
+		skipping.addSkippedDescender("Skipped", new BasicDescender("@{", "}", new BasicConsType("Skipped", "@{", "}")), null);
+		
+		Random random = new Random(46);
+		int failed = 0, valid = 0;
+		for (int i = 0; i < inputs; i++) {
+			String input = randomInput(random);
+			String expected = describe(reference, input);
+			if (!expected.endsWith("Exception"))
+				valid++;
+			String actual = describe(lazy, input);
+			//Errors inside lazy descents are deferred until they are forced, so a later error outside of them can be reported first
+			if (!(expected.equals(actual) || expected.endsWith("Exception") && actual.endsWith("Exception")) && failed++ < 5)
+				System.out.println("Lazy mismatch for \"" + input + "\": expected " + expected + " but got " + actual);
+			
+			//Only the top-level Language has the skipped descender, and it does not look for its tokens in strings or comments
+			String skipped = input.replaceAll("[{}\"#]", " ").replace("@", "@{").replace("1", "}"), removed = removeSkipped(skipped);
+			expected = describe(reference, removed);
+			actual = describe(skipping, skipped);
+			if (!expected.equals(actual) && failed++ < 5)
+				System.out.println("Skipped mismatch for \"" + skipped + "\": expected " + expected + " (from \"" + removed + "\") but got " + actual);
+			
+			ConsCell all;
+			try {
+				all = reference.lex(input);
+			}
+			catch (RuntimeException e) { //Errors within skipped descents are not reported, so only inputs without errors are compared
+				continue;
+			}
+			List<String> keep = new ArrayList<>();
+			for (String name : NAMES)
+				if (random.nextBoolean())
+					keep.add(name);
+			expected = select(all, keep).toString();
+			try {
+				actual = describe(reference.lexSelective(input, keep));
+			}
+			catch (RuntimeException e) {
+				actual = e.getClass().getSimpleName();
+			}
+			if (!expected.equals(actual) && failed++ < 5)
+				System.out.println("Selective mismatch for \"" + input + "\" keeping " + keep + ": expected " + expected + " but got " + actual);
+		}
+		System.out.println(inputs + " inputs (" + valid + " without errors): " + failed + " mismatches");
+		if (failed > 0)
+			System.exit(1);
+	}
+	
+	/**
+	 * Creates a {@link BasicLexer} in which braces switch to a {@link toberumono.lexer.base.Language Language} that has its
+	 * own comments and strings.
+	 */
+	private static BasicLexer create(boolean lazy) {
+		BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
+		lexer.addIgnore("Comment", Pattern.compile("#[^\n]*"));
+		lexer.addRule("Word", new BasicRule(Pattern.compile("[a-z]+"), new BasicConsType("Word")));
+		lexer.addRule("Integer", new BasicRule(Pattern.compile("[0-9]+"), new BasicConsType("Integer")));
+		lexer.addRule("String", new BasicRule(Pattern.compile("\"[^\"]*\""), new BasicConsType("String")));
+		BasicDescender parentheses = new BasicDescender("(", ")", new BasicConsType("Parentheses", "(", ")"));
+		if (lazy)
+			lexer.addLazyDescender("Parentheses", parentheses, new BasicConsType("Lazy"), "String");
+		else
+			lexer.addDescender("Parentheses", parentheses);
+		lexer.addDescender("Brackets", new BasicDescender("[", "]", new BasicConsType("Brackets", "[", "]")));
+		BasicLanguage other = new BasicLanguage();
+		other.addIgnore("Comment", Pattern.compile("#[^\n]*"));
+		other.addRule("Any", new BasicRule(Pattern.compile("[^{}#\"]+"), new BasicConsType("Any")));
+		other.addRule("String", new BasicRule(Pattern.compile("\"[^\"]*\""), new BasicConsType("String")));
+		BasicDescender braces = new BasicDescender("{", "}", (l, state, match) -> state.pushLanguage(other), (l, state, root) -> {
+			state.popLanguage();
+			return new ConsCell(root, new BasicConsType("Braces", "{", "}"));
+		});
+		lexer.addDescender("Braces", braces);
+		other.addDescender("Braces", braces);
+		return lexer;
+	}
+	
+	private static String randomInput(Random random) {
+		StringBuilder input = new StringBuilder();
+		for (int i = random.nextInt(30) + 1; i > 0; i--)
+			input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		return input.toString();
+	}
+	
+	/**
+	 * Replaces each skipped descent (which is found by counting only its open and close tokens) with a space.
+	 */
+	private static String removeSkipped(String input) {
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < input.length();) {
+			if (!input.startsWith("@{", i)) {
+				out.append(input.charAt(i++));
+				continue;
+			}
+			int depth = 1;
+			for (i += 2; i < input.length() && depth > 0;) {
+				if (input.startsWith("@{", i)) {
+					depth++;
+					i += 2;
+				}
+				else if (input.charAt(i++) == '}')
+					depth--;
+			}
+			out.append(' ');
+		}
+		return out.toString();
+	}
+	
+	/**
+	 * Computes what {@link BasicLexer#lexSelective(String, java.util.Collection)} should produce from the full result.
+	 */
+	private static List<Object> select(ConsCell cells, List<String> keep) {
+		List<Object> out = new ArrayList<>();
+		for (ConsCell cell = cells; cell != null; cell = cell.getNext()) {
+			String name = ((BasicConsType) cell.getCarType()).getName();
+			if (!DESCENDERS.contains(name)) {
+				if (keep.contains(name))
+					out.add(cell.getCar() + ":" + name);
+			}
+			else if (keep.contains(name))
+				out.add(Arrays.asList(select((ConsCell) cell.getCar(), keep), name));
+			else
+				out.addAll(select((ConsCell) cell.getCar(), keep));
+		}
+		return out;
+	}
+	
+	private static String describe(BasicLexer lexer, String input) {
+		try {
+			return describe(lexer.lex(input));
+		}
+		catch (RuntimeException e) {
+			return e.getClass().getSimpleName();
+		}
+	}
+	
+	/**
+	 * Describes the cells in the same form as {@link #select(ConsCell, List)}, forcing any {@link LazyDescent LazyDescents}.
+	 */
+	private static String describe(ConsCell cells) {
+		List<Object> out = new ArrayList<>();
+		for (ConsCell cell = cells; cell != null; cell = cell.getNext()) {
+			ConsCell forced = cell.getCar() instanceof LazyDescent ? (ConsCell) LazyDescent.force(cell.getCar()) : cell;
+			String name = ((BasicConsType) forced.getCarType()).getName();
+			if (DESCENDERS.contains(name))
+				out.add(Arrays.asList(describe((ConsCell) forced.getCar()), name));
+			else
+				out.add(forced.getCar() + ":" + name);
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,129 @@
+package testCases;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import toberumono.lexer.BasicDescender;
+import toberumono.lexer.BasicLanguage;
+import toberumono.lexer.BasicLexer;
+import toberumono.lexer.BasicRule;
+import toberumono.lexer.base.LexedDocument;
+import toberumono.lexer.util.DefaultIgnorePatterns;
+import toberumono.structures.sexpressions.BasicConsType;
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+
+/**
+ * Applies random edits to random inputs with {@link BasicLexer#relex(LexedDocument, int, int, String)} and checks every
+ * result against {@link BasicLexer#lex(String)} and {@link BasicLexer#lexDocument(String)} of the edited input. The
+ * {@link toberumono.lexer.base.Language Language} stack is switched by rules as well as by {@link BasicDescender
+ * Descenders} so that re-synchronization has to compare whole stacks.
+ * 
+ * @author Toberumono
+ */
+public class IncrementalLexTest {
+	private static final String ALPHABET = "ab1 2()<>  ";
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            optionally, the number of inputs followed by the number of edits applied to each one
+	 */
+	public static void main(String[] args) {
+		int inputs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int edits = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		BasicLanguage inner = new BasicLanguage();
+		inner.addIgnore(DefaultIgnorePatterns.WHITESPACE);
+		inner.addRule("Inner", new BasicRule(Pattern.compile("[a-z0-9]+"), new BasicConsType("Inner")));
+		inner.addRule("Open", new BasicRule(Pattern.compile("<"), (lexer, state, match) -> {
+			state.pushLanguage(inner);
+			return new ConsCell(match.group(), new BasicConsType("Open"));
+		}));
+		inner.addRule("Close", new BasicRule(Pattern.compile(">"), (lexer, state, match) -> {
+			state.popLanguage();
+			return new ConsCell(match.group(), new BasicConsType("Close"));
+		}));
+		BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
+		lexer.addRule("Integer", new BasicRule(Pattern.compile("[0-9]+"), new BasicConsType("Integer")));
+		lexer.addRule("Word", new BasicRule(Pattern.compile("[a-z]+"), new BasicConsType("Word")));
+		lexer.addRule("Open", inner.getRule("Open"));
+		BasicDescender parentheses = new BasicDescender("(", ")", new BasicConsType("Parentheses", "(", ")"));
+		lexer.addDescender("Parentheses", parentheses);
+		inner.addDescender("Parentheses", parentheses);
+		
+		Random random = new Random(27);
+		int checked = 0, failed = 0;
+		for (int i = 0; i < inputs; i++) {
+			String input = randomInput(random);
+			LexedDocument<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> document;
+			try {
+				document = lexer.lexDocument(input);
+			}
+			catch (Exception e) {
+				continue;
+			}
+			for (int e = 0; e < edits && document != null; e++) {
+				int offset = random.nextInt(input.length() + 1), removed = random.nextInt(Math.min(3, input.length() - offset) + 1);
+				String inserted = random.nextBoolean() ? "" : randomInput(random).substring(0, 1);
+				String edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+				String expected = edited.trim().isEmpty() ? "[ ]" : describe(lexer, edited), actual; //Unlike lex, lexDocument accepts inputs without tokens
+				LexedDocument<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> relexed = null;
+				try {
+					relexed = lexer.relex(document, offset, removed, inserted);
+					actual = describe(relexed.getRoot()) + describeBounds(relexed);
+					expected += describeBounds(lexer.lexDocument(edited));
+				}
+				catch (Exception ex) {
+					actual = ex.getClass().getSimpleName();
+				}
+				checked++;
+				if (!expected.equals(actual) && failed++ < 5)
+					System.out.println("Mismatch for \"" + input + "\" -> \"" + edited + "\": expected " + expected + " but got " + actual);
+				input = edited;
+				document = relexed;
+			}
+		}
+		System.out.println(checked + " edits: " + failed + " mismatches");
+		if (failed > 0)
+			System.exit(1);
+	}
+	
+	private static String randomInput(Random random) {
+		StringBuilder input = new StringBuilder();
+		for (int i = random.nextInt(30) + 1; i > 0; i--)
+			input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		return input.toString();
+	}
+	
+	private static String describe(BasicLexer lexer, String input) {
+		try {
+			return describe(lexer.lex(input));
+		}
+		catch (Exception e) {
+			return e.getClass().getSimpleName();
+		}
+	}
+	
+	/**
+	 * Describes the cells with their types, because the same text can be lexed with different types in different
+	 * {@link toberumono.lexer.base.Language Languages}.
+	 */
+	private static String describe(ConsCell cells) {
+		StringBuilder out = new StringBuilder("[");
+		for (ConsCell cell = cells; cell != null; cell = cell.getNext()) {
+			if (cell.getNext() != null && cell.getNext().getPrevious() != cell)
+				out.append("!broken link!");
+			out.append(' ').append(cell.getCar() instanceof ConsCell ? describe((ConsCell) cell.getCar()) : cell.getCar()).append(':')
+					.append(((BasicConsType) cell.getCarType()).getName());
+		}
+		return out.append(" ]").toString();
+	}
+	
+	private static String describeBounds(LexedDocument<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> document) {
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < document.size(); i++)
+			out.append(' ').append(document.getStart(i)).append('-').append(document.getEnd(i));
+		return out.toString();
+	}
+}
@@ -0,0 +1,83 @@
+package testCases;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import toberumono.lexer.BasicDescender;
+import toberumono.lexer.BasicLanguage;
+import toberumono.lexer.BasicLexer;
+import toberumono.lexer.BasicRule;
+import toberumono.lexer.base.Language;
+import toberumono.lexer.base.LayeredLanguage;
+import toberumono.lexer.errors.UnrecognizedCharacterException;
+import toberumono.lexer.util.DefaultIgnorePatterns;
+import toberumono.structures.sexpressions.BasicConsType;
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+
+/**
+ * Checks that a {@link LayeredLanguage} shadows the entries of its base {@link Language} as documented (including how
+ * ties between equally long matches are broken) without affecting the base {@link Language}, and that later changes to the
+ * base {@link Language} do not affect the {@link LayeredLanguage}.
+ * 
+ * @author Toberumono
+ */
+public class LayeredLanguageTest {
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the command line arguments (unused)
+	 */
+	public static void main(String[] args) {
+		BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
+		Pattern keyword = Pattern.compile("if");
+		BasicLanguage base = new BasicLanguage(); //Its Maps are LinkedHashMaps, so ties go to the entry that was added first
+		base.addIgnore(DefaultIgnorePatterns.WHITESPACE);
+		base.addRule("Keyword", new BasicRule(keyword, new BasicConsType("Keyword")));
+		base.addRule("Word", new BasicRule(Pattern.compile("[a-z]+"), new BasicConsType("Word")));
+		base.addRule("Number", new BasicRule(Pattern.compile("[0-9]+"), new BasicConsType("Number")));
+		check("base", lexer.lex("if x 1", base), "if:Keyword x:Word 1:Number");
+		
+		//A replacement that reuses the shadowed Pattern keeps its place, so it still wins the tie with Word
+		LayeredLanguage<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> samePattern = new LayeredLanguage<>(base);
+		samePattern.removeRule("Keyword");
+		samePattern.addRule("Keyword", new BasicRule(keyword, new BasicConsType("Replaced")));
+		samePattern.removeRule("Number");
+		samePattern.addIgnore("Comment", Pattern.compile("#[^\n]*"));
+		check("same Pattern", lexer.lex("if x # 1", samePattern), "if:Replaced x:Word");
+		if (!Arrays.asList("Keyword", "Word").equals(Arrays.asList(samePattern.snapshot().getRules().keySet().toArray())))
+			throw new AssertionError("The replacement did not keep the shadowed rule's position: " + samePattern.snapshot().getRules().keySet());
+		
+		//A replacement with a new Pattern comes after all of the base's Patterns, so it loses the tie with Word
+		LayeredLanguage<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> newPattern = new LayeredLanguage<>(base);
+		newPattern.removeRule("Keyword");
+		newPattern.addRule("Keyword", new BasicRule(Pattern.compile("if[0-9]*"), new BasicConsType("Replaced")));
+		check("new Pattern", lexer.lex("if x 1", newPattern), "if:Word x:Word 1:Number");
+		check("new Pattern (longer match)", lexer.lex("if1 x", newPattern), "if1:Replaced x:Word");
+		
+		//Neither the LayeredLanguages nor their clones affect the base, and changes to the base do not affect them
+		LayeredLanguage<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> clone = samePattern.clone();
+		clone.addRule("Symbol", new BasicRule(Pattern.compile("[!?]"), new BasicConsType("Symbol")));
+		base.addRule("Symbol", new BasicRule(Pattern.compile("[!?]"), new BasicConsType("Base")));
+		check("base after changes", lexer.lex("if x 1 !", base), "if:Keyword x:Word 1:Number !:Base");
+		check("clone", lexer.lex("if x ! # 1", clone), "if:Replaced x:Word !:Symbol");
+		try {
+			lexer.lex("if !", samePattern);
+			throw new AssertionError("A rule added to the base after the LayeredLanguage was constructed was used.");
+		}
+		catch (UnrecognizedCharacterException e) {
+			System.out.println("later base changes: not visible");
+		}
+	}
+	
+	private static void check(String name, ConsCell tokens, String expected) {
+		StringBuilder out = new StringBuilder();
+		for (ConsCell cell = tokens; cell != null; cell = cell.getNext())
+			out.append(out.length() == 0 ? "" : " ").append(cell.getCar()).append(':').append(((BasicConsType) cell.getCarType()).getName());
+		System.out.println(name + ": " + out);
+		if (!out.toString().equals(expected))
+			throw new AssertionError("Expected \"" + expected + "\".");
+	}
+}
@@ -0,0 +1,88 @@
+package testCases;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import toberumono.lexer.BasicDescender;
+import toberumono.lexer.BasicLanguage;
+import toberumono.lexer.BasicLexer;
+import toberumono.lexer.BasicRule;
+import toberumono.lexer.base.LexerState;
+import toberumono.lexer.util.DefaultIgnorePatterns;
+import toberumono.structures.sexpressions.BasicConsType;
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+
+/**
+ * Checks that the lookahead buffer used by {@link BasicLexer#getNextConsCell(LexerState, boolean)} and
+ * {@link BasicLexer#peek(LexerState, int)} stays valid when a token's action pushes or pops a
+ * {@link toberumono.lexer.base.Language Language}, so that every action is performed exactly once.
+ * 
+ * @author Toberumono
+ */
+public class LookaheadTest {
+	private static final String INPUT = "ab @ 12 34 ! cd";
+	private static final String EXPECTED = "ab @ 12 34 ! cd";
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the command line arguments (unused)
+	 */
+	public static void main(String[] args) {
+		AtomicInteger actions = new AtomicInteger(0);
+		BasicLanguage numbers = new BasicLanguage();
+		numbers.addIgnore(DefaultIgnorePatterns.WHITESPACE);
+		numbers.addRule("Number", countingRule("[0-9]+", "Number", actions));
+		numbers.addRule("Back", new BasicRule(Pattern.compile("!"), (lexer, state, match) -> {
+			actions.incrementAndGet();
+			state.popLanguage();
+			return new ConsCell(match.group(), new BasicConsType("Back"));
+		}));
+		
+		BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
+		lexer.addRule("Word", countingRule("[a-z]+", "Word", actions));
+		lexer.addRule("Switch", new BasicRule(Pattern.compile("@"), (lexer1, state, match) -> {
+			actions.incrementAndGet();
+			state.pushLanguage(numbers);
+			return new ConsCell(match.group(), new BasicConsType("Switch"));
+		}));
+		
+		//Each token is looked at without advancing and then consumed
+		LexerState<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> state = new LexerState<>(INPUT, 0, null, lexer);
+		StringBuilder tokens = new StringBuilder();
+		while (state.hasNext()) {
+			ConsCell next = lexer.getNextConsCell(state, false), consumed = lexer.getNextConsCell(state, true);
+			if (next != consumed)
+				throw new AssertionError("getNextConsCell(false) and getNextConsCell(true) returned different tokens.");
+			tokens.append(tokens.length() == 0 ? "" : " ").append(consumed.getCar());
+		}
+		check("getNextConsCell", tokens.toString(), actions);
+		
+		//The token after a token that switches the Language is found in the new Language
+		actions.set(0);
+		state = new LexerState<>(INPUT, 0, null, lexer);
+		String peeked = lexer.peek(state, 1).getCar() + " " + lexer.peek(state, 2).getCar();
+		if (!peeked.equals("@ 12"))
+			throw new AssertionError("Expected to peek at \"@ 12\" but got \"" + peeked + "\".");
+		tokens.setLength(0);
+		while (state.hasNext())
+			tokens.append(tokens.length() == 0 ? "" : " ").append(lexer.getNextConsCell(state, true).getCar());
+		check("peek", tokens.toString(), actions);
+	}
+	
+	private static BasicRule countingRule(String pattern, String type, AtomicInteger actions) {
+		ConsType carType = new BasicConsType(type);
+		return new BasicRule(Pattern.compile(pattern), (lexer, state, match) -> {
+			actions.incrementAndGet();
+			return new ConsCell(match.group(), carType);
+		});
+	}
+	
+	private static void check(String name, String tokens, AtomicInteger actions) {
+		System.out.println(name + ": " + tokens + " with " + actions.get() + " actions");
+		if (!tokens.equals(EXPECTED) || actions.get() != 6)
+			throw new AssertionError("Expected \"" + EXPECTED + "\" with 6 actions.");
+	}
+}
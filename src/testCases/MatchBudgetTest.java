@@ -0,0 +1,50 @@
+package testCases;
+
+import java.util.regex.Pattern;
+
+import toberumono.lexer.BasicLexer;
+import toberumono.lexer.BasicRule;
+import toberumono.lexer.base.MatchBudget;
+import toberumono.lexer.util.DefaultIgnorePatterns;
+import toberumono.structures.sexpressions.BasicConsType;
+import toberumono.structures.sexpressions.ConsCell;
+
+/**
+ * Lexes a large input with {@link toberumono.lexer.base.Rule Rules} that never backtrack under a small {@link MatchBudget}
+ * with the {@link MatchBudget.Policy#FAIL FAIL} policy. None of the {@link toberumono.lexer.base.Rule Rules} can exceed the
+ * budget because every {@link Pattern} is only matched at the head position, so the amount of work that a {@link Pattern}
+ * that does not match does at each position is independent of the length of the input.
+ * 
+ * @author Toberumono
+ */
+public class MatchBudgetTest {
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            optionally, the number of words in the input
+	 */
+	public static void main(String[] args) {
+		int words = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
+		lexer.addRule("Word", new BasicRule(Pattern.compile("[a-z]+"), new BasicConsType("Word")));
+		lexer.addRule("Number", new BasicRule(Pattern.compile("[0-9]+"), new BasicConsType("Number")));
+		//The input does not contain any quotes, so searching ahead for this would read the rest of the input at every position
+		lexer.addRule("String", new BasicRule(Pattern.compile("\"[^\"]*\""), new BasicConsType("String")));
+		MatchBudget budget = new MatchBudget(64, MatchBudget.Policy.FAIL);
+		lexer.setMatchBudget(budget);
+		
+		StringBuilder input = new StringBuilder(words * 6);
+		for (int i = 0; i < words; i++)
+			input.append(i % 3 == 0 ? "word " : i % 3 == 1 ? "12345 " : "abc ");
+		long start = System.nanoTime();
+		ConsCell result = lexer.lex(input.toString());
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		
+		int tokens = result.length();
+		System.out.println(tokens + " tokens in " + input.length() + " characters in " + elapsed + "ms with " + budget.getExceededCount() + " over-budget events");
+		if (tokens != words || budget.getExceededCount() != 0)
+			throw new AssertionError("Expected " + words + " tokens and no over-budget events.");
+	}
+}
@@ -0,0 +1,115 @@
+package testCases;
+
+import java.util.Random;
+
+import toberumono.lexer.util.NumberParsers;
+
+/**
+ * Checks that {@link NumberParsers#parseInt(CharSequence, int, int)}, {@link NumberParsers#parseLong(CharSequence, int, int)},
+ * and {@link NumberParsers#parseDouble(CharSequence, int, int)} return the same values (or throw the same types of
+ * exceptions) as {@link Integer#parseInt(String)}, {@link Long#parseLong(String)}, and {@link Double#parseDouble(String)}
+ * on a set of edge cases and random decimal numbers. Each number is parsed from the middle of a larger input.
+ * 
+ * @author Toberumono
+ */
+public class NumberParsersTest {
+	private static final String[] EDGE_CASES = {"0", "-0", "+0", "2147483647", "-2147483648", "2147483648", "-2147483649", "9223372036854775807",
+			"-9223372036854775808", "9223372036854775808", "-9223372036854775809", "5.", ".5", "-.0", "0.1", "9007199254740993", "9007199254740992.5",
+			"123456789012345678901234567890", "0.0000000000000000000001", "0.00000000000000000000001", "+", "-", "", ".", "1e5", "NaN", "1.2.3"};
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            optionally, the number of random inputs
+	 */
+	public static void main(String[] args) {
+		int inputs = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		int failed = 0;
+		for (String number : EDGE_CASES)
+			failed += check(number, failed < 5);
+		Random random = new Random(33);
+		for (int i = 0; i < inputs; i++)
+			failed += check(randomNumber(random), failed < 5);
+		System.out.println((EDGE_CASES.length + inputs) + " inputs: " + failed + " mismatches");
+		if (failed > 0)
+			System.exit(1);
+	}
+	
+	/**
+	 * Produces an optional sign, up to 19 digits, and, half of the time, a decimal point followed by up to 24 digits.
+	 */
+	private static String randomNumber(Random random) {
+		StringBuilder number = new StringBuilder();
+		int sign = random.nextInt(4);
+		if (sign == 0)
+			number.append('-');
+		else if (sign == 1)
+			number.append('+');
+		for (int i = random.nextInt(20); i > 0; i--)
+			number.append((char) ('0' + random.nextInt(10)));
+		if (random.nextBoolean()) {
+			number.append('.');
+			for (int i = random.nextInt(25); i > 0; i--)
+				number.append((char) ('0' + random.nextInt(10)));
+		}
+		return number.toString();
+	}
+	
+	private static int check(String number, boolean report) {
+		String input = "xx" + number + "yy";
+		int start = 2, end = start + number.length(), failed = 0;
+		Object expected, actual;
+		try {
+			expected = Integer.parseInt(number);
+		}
+		catch (RuntimeException e) {
+			expected = e.getClass();
+		}
+		try {
+			actual = NumberParsers.parseInt(input, start, end);
+		}
+		catch (RuntimeException e) {
+			actual = e.getClass();
+		}
+		failed += compare("parseInt", number, expected, actual, report);
+		try {
+			expected = Long.parseLong(number);
+		}
+		catch (RuntimeException e) {
+			expected = e.getClass();
+		}
+		try {
+			actual = NumberParsers.parseLong(input, start, end);
+		}
+		catch (RuntimeException e) {
+			actual = e.getClass();
+		}
+		failed += compare("parseLong", number, expected, actual, report && failed == 0);
+		try {
+			expected = Double.parseDouble(number);
+		}
+		catch (RuntimeException e) {
+			expected = e.getClass();
+		}
+		try {
+			actual = NumberParsers.parseDouble(input, start, end);
+		}
+		catch (RuntimeException e) {
+			actual = e.getClass();
+		}
+		failed += compare("parseDouble", number, expected, actual, report && failed == 0);
+		return Math.min(failed, 1);
+	}
+	
+	/**
+	 * {@link Double#equals(Object)} compares the bits of the values, so this also distinguishes {@code -0.0} from {@code 0.0}.
+	 */
+	private static int compare(String method, String number, Object expected, Object actual, boolean report) {
+		if (expected.equals(actual))
+			return 0;
+		if (report)
+			System.out.println(method + " mismatch for \"" + number + "\": expected " + expected + " but got " + actual);
+		return 1;
+	}
+}
@@ -0,0 +1,127 @@
+package testCases;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import toberumono.lexer.BasicDescender;
+import toberumono.lexer.BasicLexer;
+import toberumono.lexer.BasicRule;
+import toberumono.lexer.util.DefaultIgnorePatterns;
+import toberumono.structures.sexpressions.BasicConsType;
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+
+/**
+ * Checks that {@link BasicLexer#lexParallel(String, Collection, ForkJoinPool)} produces the same results as
+ * {@link BasicLexer#lex(String)} on random inputs with large nested blocks. Because
+ * {@link BasicLexer#lexParallel(String, Collection, ForkJoinPool)} quietly falls back to lexing sequentially when a subtree
+ * fails, the number of {@link BasicRule} actions is also counted: for inputs without errors, each action must be performed
+ * exactly once.
+ * 
+ * @author Toberumono
+ */
+public class ParallelLexTest {
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            optionally, the number of inputs
+	 */
+	public static void main(String[] args) {
+		int inputs = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		AtomicInteger actions = new AtomicInteger();
+		ConsType word = new BasicConsType("Word");
+		BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
+		lexer.addIgnore("Comment", Pattern.compile("#[^\n]*"));
+		lexer.addRule("Word", new BasicRule(Pattern.compile("[a-z]+"), (l, state, match) -> {
+			actions.incrementAndGet();
+			return new ConsCell(match.group(), word);
+		}));
+		lexer.addRule("String", new BasicRule(Pattern.compile("\"[^\"]*\""), new BasicConsType("String")));
+		lexer.addDescender("Parentheses", new BasicDescender("(", ")", new BasicConsType("Parentheses", "(", ")")));
+		lexer.addDescender("Brackets", new BasicDescender("[", "]", new BasicConsType("Brackets", "[", "]")));
+		Collection<String> opaque = Collections.singleton("String");
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Random random = new Random(44);
+		int failed = 0, fallbacks = 0;
+		for (int i = 0; i < inputs; i++) {
+			String input = randomInput(random);
+			actions.set(0);
+			String expected = describe(lexer, input);
+			int sequential = actions.getAndSet(0);
+			String actual;
+			try {
+				actual = lexer.lexParallel(input, opaque, pool).structureString();
+			}
+			catch (RuntimeException e) {
+				actual = e.getClass().getSimpleName();
+			}
+			boolean valid = !expected.endsWith("Exception"); //Inputs with errors are always lexed again to find the first error
+			if (!expected.equals(actual) || (valid && actions.get() != sequential)) {
+				if (failed++ < 5)
+					System.out.println("Mismatch for input " + i + ": " + (expected.equals(actual) ? "the results are equal" : "the results differ") + ", and "
+							+ actions.get() + " actions were performed instead of " + sequential);
+			}
+			
+			//The prepass cannot skip the strings without the opaque rule, so it mispredicts and the Lexer falls back
+			actions.set(0);
+			try {
+				actual = lexer.lexParallel(input, Collections.emptySet(), pool).structureString();
+			}
+			catch (RuntimeException e) {
+				actual = e.getClass().getSimpleName();
+			}
+			if (actions.get() > sequential)
+				fallbacks++;
+			if (!expected.equals(actual) && failed++ < 5)
+				System.out.println("Mismatch for input " + i + " after falling back");
+		}
+		pool.shutdown();
+		System.out.println(inputs + " inputs: " + failed + " mismatches (" + fallbacks + " fell back without the opaque rule)");
+		if (failed > 0)
+			System.exit(1);
+	}
+	
+	/**
+	 * Produces brackets that contain several large parenthesized blocks. Some of the inputs end with an unrecognized
+	 * character.
+	 */
+	private static String randomInput(Random random) {
+		StringBuilder input = new StringBuilder("[");
+		for (int b = random.nextInt(6) + 1; b > 0; b--) {
+			input.append(" (");
+			for (int i = random.nextInt(1600) + 200; i > 0; i--) {
+				switch (random.nextInt(6)) {
+					case 0:
+						input.append(" \"x ( ]\"");
+						break;
+					case 1:
+						input.append(" # c ) (\n");
+						break;
+					case 2:
+						input.append(" [ abc (d) ]");
+						break;
+					default:
+						input.append(" w");
+				}
+			}
+			input.append(")");
+		}
+		return input.append(random.nextInt(8) == 0 ? " $]" : " ]").toString();
+	}
+	
+	private static String describe(BasicLexer lexer, String input) {
+		try {
+			return lexer.lex(input).structureString();
+		}
+		catch (RuntimeException e) {
+			return e.getClass().getSimpleName();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package testCases;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import toberumono.lexer.BasicDescender;
+import toberumono.lexer.BasicLexer;
+import toberumono.lexer.BasicRule;
+import toberumono.lexer.base.LexerDiagnostic;
+import toberumono.lexer.base.RecoveredResult;
+import toberumono.lexer.util.DefaultIgnorePatterns;
+import toberumono.structures.sexpressions.BasicConsType;
+import toberumono.structures.sexpressions.ConsCell;
+
+/**
+ * Checks {@link BasicLexer#lexRecovering(String, toberumono.structures.sexpressions.ConsType)} against
+ * {@link BasicLexer#lex(String)} on random inputs:
+ * <ul>
+ * <li>Inputs without errors must produce the same tokens and no {@link LexerDiagnostic LexerDiagnostics}.</li>
+ * <li>Inserting runs of unrecognized characters between the tokens of such an input must produce the same tokens (when no
+ * tokens are emitted for skipped input) and one {@link LexerDiagnostic} with the bounds of each run.</li>
+ * <li>Removing the trailing close tokens of such an input must produce the same tokens and one {@link LexerDiagnostic} for
+ * each {@link BasicDescender Descender} that was left open.</li>
+ * </ul>
+ * 
+ * @author Toberumono
+ */
+public class RecoveryTest {
+	private static final String ALPHABET = "ab1 ()[]  ", GARBAGE = "$%";
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            optionally, the number of inputs
+	 */
+	public static void main(String[] args) {
+		int inputs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
+		lexer.addRule("Word", new BasicRule(Pattern.compile("[a-z]+"), new BasicConsType("Word")));
+		lexer.addRule("Integer", new BasicRule(Pattern.compile("[0-9]+"), new BasicConsType("Integer")));
+		lexer.addDescender("Parentheses", new BasicDescender("(", ")", new BasicConsType("Parentheses", "(", ")")));
+		lexer.addDescender("Brackets", new BasicDescender("[", "]", new BasicConsType("Brackets", "[", "]")));
+		
+		Random random = new Random(42);
+		int checked = 0, failed = 0;
+		for (int i = 0; i < inputs; i++) {
+			String input = randomInput(random), expected;
+			try {
+				expected = describe(lexer.lex(input));
+			}
+			catch (RuntimeException e) {
+				continue;
+			}
+			if (isUnclosed(input)) //lex(String) stops at the end of the input without closing the open descents
+				continue;
+			checked++;
+			String actual = describe(lexer, input);
+			if (!expected.equals(actual) && failed++ < 5)
+				System.out.println("Mismatch for \"" + input + "\": expected " + expected + " but got " + actual);
+			
+			StringBuilder garbled = new StringBuilder(input), diagnostics = new StringBuilder();
+			for (int runs = random.nextInt(3) + 1; runs > 0; runs--) {
+				int offset = random.nextInt(garbled.length() + 1);
+				if (offset > 0 && offset < garbled.length() && sameClass(garbled.charAt(offset - 1), garbled.charAt(offset)))
+					continue; //Inserting the run here would split a token
+				StringBuilder run = new StringBuilder();
+				for (int length = random.nextInt(3) + 1; length > 0; length--)
+					run.append(GARBAGE.charAt(random.nextInt(GARBAGE.length())));
+				garbled.insert(offset, " " + run + " ");
+			}
+			for (int start = 0; (start = indexOfGarbage(garbled, start)) < garbled.length();) {
+				int end = start;
+				while (end < garbled.length() && GARBAGE.indexOf(garbled.charAt(end)) >= 0)
+					end++;
+				diagnostics.append(' ').append(LexerDiagnostic.Kind.UNRECOGNIZED_INPUT).append(' ').append(start).append('-').append(end);
+				start = end;
+			}
+			actual = describe(lexer, garbled.toString());
+			if (!(expected + diagnostics).equals(actual) && failed++ < 5)
+				System.out.println("Mismatch for \"" + garbled + "\": expected " + expected + diagnostics + " but got " + actual);
+			
+			int end = input.length(), unclosed = 0;
+			for (char c; end > 0 && ((c = input.charAt(end - 1)) == ' ' || c == ')' || c == ']'); end--)
+				if (c != ' ')
+					unclosed++;
+			if (unclosed == 0 || end == 0)
+				continue;
+			String truncated = input.substring(0, end);
+			diagnostics.setLength(0);
+			for (int k = 0; k < unclosed; k++)
+				diagnostics.append(' ').append(LexerDiagnostic.Kind.UNCLOSED_DESCENDER).append(' ').append(end).append('-').append(end);
+			actual = describe(lexer, truncated);
+			if (!(expected + diagnostics).equals(actual) && failed++ < 5)
+				System.out.println("Mismatch for \"" + truncated + "\": expected " + expected + diagnostics + " but got " + actual);
+		}
+		System.out.println(checked + " inputs: " + failed + " mismatches");
+		if (failed > 0)
+			System.exit(1);
+	}
+	
+	private static String randomInput(Random random) {
+		StringBuilder input = new StringBuilder();
+		for (int i = random.nextInt(30) + 1; i > 0; i--)
+			input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		return input.toString();
+	}
+	
+	private static boolean isUnclosed(String input) {
+		int depth = 0;
+		for (char c : input.toCharArray())
+			if (c == '(' || c == '[')
+				depth++;
+			else if (c == ')' || c == ']')
+				depth--;
+		return depth > 0;
+	}
+	
+	private static boolean sameClass(char a, char b) {
+		return Character.isLetter(a) && Character.isLetter(b) || Character.isDigit(a) && Character.isDigit(b);
+	}
+	
+	private static int indexOfGarbage(CharSequence input, int from) {
+		while (from < input.length() && GARBAGE.indexOf(input.charAt(from)) < 0)
+			from++;
+		return from;
+	}
+	
+	/**
+	 * Describes the result of {@link BasicLexer#lexRecovering(String, toberumono.structures.sexpressions.ConsType)} as its
+	 * tokens followed by its {@link LexerDiagnostic LexerDiagnostics}.
+	 */
+	private static String describe(BasicLexer lexer, String input) {
+		try {
+			RecoveredResult<ConsCell> result = lexer.lexRecovering(input, null); //No tokens are emitted for skipped input
+			StringBuilder out = new StringBuilder(describe(result.getRoot()));
+			List<LexerDiagnostic> diagnostics = result.getDiagnostics();
+			if (result.hasErrors() == diagnostics.isEmpty())
+				out.append(" hasErrors is wrong");
+			for (LexerDiagnostic diagnostic : diagnostics)
+				out.append(' ').append(diagnostic.getKind()).append(' ').append(diagnostic.getStart()).append('-').append(diagnostic.getEnd());
+			return out.toString();
+		}
+		catch (RuntimeException e) {
+			return e.getClass().getSimpleName();
+		}
+	}
+	
+	private static String describe(ConsCell cells) {
+		StringBuilder out = new StringBuilder("[");
+		for (ConsCell cell = cells; cell != null; cell = cell.getNext())
+			out.append(' ').append(cell.getCar() instanceof ConsCell ? describe((ConsCell) cell.getCar()) : cell.getCar()).append(':')
+					.append(((BasicConsType) cell.getCarType()).getName());
+		return out.append(" ]").toString();
+	}
+}
@@ -0,0 +1,135 @@
+package testCases;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+import toberumono.lexer.BasicDescender;
+import toberumono.lexer.BasicLanguage;
+import toberumono.lexer.BasicLexer;
+import toberumono.lexer.BasicRule;
+import toberumono.lexer.base.TokenStore;
+import toberumono.lexer.base.TokenTape;
+import toberumono.lexer.util.DefaultIgnorePatterns;
+import toberumono.structures.sexpressions.BasicConsType;
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+
+/**
+ * Checks that {@link BasicLexer#lexToTape(String)}, {@link BasicLexer#lexTwoPhase(String, ForkJoinPool)}, and
+ * {@link BasicLexer#lexToStore(String, long)} agree with {@link BasicLexer#lex(String)} on random inputs. One of the
+ * {@link BasicDescender Descenders} pushes a {@link toberumono.lexer.base.Language Language} in its open action and pops
+ * it in its close action, so the deferred close actions must leave the {@link toberumono.lexer.base.Language Language}
+ * stack as {@link BasicLexer#lex(String)} does.
+ * 
+ * @author Toberumono
+ */
+public class TokenTapeTest {
+	private static final String ALPHABET = "ab1 2(){}  ";
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            optionally, the number of inputs
+	 * @throws Exception
+	 *             if a {@link TokenStore} cannot be created or closed
+	 */
+	public static void main(String[] args) throws Exception {
+		int inputs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		BasicLanguage inner = new BasicLanguage();
+		inner.addIgnore(DefaultIgnorePatterns.WHITESPACE);
+		inner.addRule("Inner", new BasicRule(Pattern.compile("[a-z0-9]+"), new BasicConsType("Inner")));
+		BasicLexer lexer = new BasicLexer(DefaultIgnorePatterns.WHITESPACE);
+		lexer.addRule("Word", new BasicRule(Pattern.compile("[a-z]+"), new BasicConsType("Word")));
+		ConsType integer = new BasicConsType("Integer");
+		lexer.addRule("Integer", new BasicRule(Pattern.compile("[0-9]+"), (l, state, match) -> new ConsCell(Integer.valueOf(match.group()), integer)));
+		BasicDescender parentheses = new BasicDescender("(", ")", new BasicConsType("Parentheses", "(", ")"));
+		BasicDescender braces = new BasicDescender("{", "}", (l, state, match) -> state.pushLanguage(inner), (l, state, root) -> {
+			state.popLanguage();
+			return new ConsCell(root, new BasicConsType("Braces", "{", "}"));
+		});
+		lexer.addDescender("Parentheses", parentheses);
+		lexer.addDescender("Braces", braces);
+		inner.addDescender("Parentheses", parentheses);
+		inner.addDescender("Braces", braces);
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Random random = new Random(28);
+		int failed = 0;
+		for (int i = 0; i < inputs; i++)
+			failed += check(lexer, randomInput(random), pool, failed < 5);
+		StringBuilder large = new StringBuilder(); //Enough tokens to fill more than one chunk of the TokenStore
+		for (int i = 0; i < 40000; i++)
+			large.append("a (b {c 1} 2) {3 (d)} ");
+		failed += check(lexer, large.toString(), pool, failed < 5);
+		pool.shutdown();
+		System.out.println((inputs + 1) + " inputs: " + failed + " mismatches");
+		if (failed > 0)
+			System.exit(1);
+	}
+	
+	private static int check(BasicLexer lexer, String input, ForkJoinPool pool, boolean report) throws Exception {
+		String expected = describe(lexer, input), tape, twoPhase, store;
+		try {
+			TokenTape<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> tokens = lexer.lexToTape(input);
+			tape = describe(tokens.getRoot());
+			try (TokenStore<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> stored = lexer.lexToStore(input, 0)) {
+				store = compare(tokens, stored) ? tape : "records differ";
+			}
+		}
+		catch (RuntimeException e) {
+			tape = store = e.getClass().getSimpleName();
+		}
+		try {
+			twoPhase = describe(lexer.lexTwoPhase(input, pool));
+		}
+		catch (RuntimeException e) {
+			twoPhase = e.getClass().getSimpleName();
+		}
+		if (expected.equals(tape) && expected.equals(twoPhase) && expected.equals(store))
+			return 0;
+		if (report)
+			System.out.println("Mismatch for \"" + (input.length() > 60 ? input.substring(0, 60) + "..." : input) + "\": expected " + expected + " but got " + tape
+					+ " (lexToTape), " + twoPhase + " (lexTwoPhase), and " + store + " (lexToStore)");
+		return 1;
+	}
+	
+	private static boolean compare(TokenTape<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> tape, TokenStore<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer> store) {
+		if (tape.size() != store.size())
+			return false;
+		TokenStore<ConsCell, ConsType, BasicRule, BasicDescender, BasicLexer>.Cursor cursor = store.cursor();
+		for (int i = 0; cursor.next(); i++)
+			if (cursor.getStart() != tape.getStart(i) || cursor.getEnd() != tape.getEnd(i) || cursor.getParent() != tape.getParent(i) || cursor.isDescender() != tape.isDescender(i))
+				return false;
+		return true;
+	}
+	
+	private static String randomInput(Random random) {
+		StringBuilder input = new StringBuilder();
+		for (int i = random.nextInt(30) + 1; i > 0; i--)
+			input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		return input.toString();
+	}
+	
+	private static String describe(BasicLexer lexer, String input) {
+		try {
+			return describe(lexer.lex(input));
+		}
+		catch (RuntimeException e) {
+			return e.getClass().getSimpleName();
+		}
+	}
+	
+	/**
+	 * Describes the cells with their types, because the same text is lexed with different types inside and outside of
+	 * braces.
+	 */
+	private static String describe(ConsCell cells) {
+		StringBuilder out = new StringBuilder("[");
+		for (ConsCell cell = cells; cell != null; cell = cell.getNext())
+			out.append(' ').append(cell.getCar() instanceof ConsCell ? describe((ConsCell) cell.getCar()) : cell.getCar()).append(':')
+					.append(((BasicConsType) cell.getCarType()).getName());
+		return out.append(" ]").toString();
+	}
+}
@@ -1,11 +1,14 @@
 package toberumono.lexer;
 
+import java.util.function.Function;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
 import toberumono.lexer.base.AbstractRule;
 import toberumono.lexer.base.LexerAction;
+import toberumono.lexer.base.PureAction;
 import toberumono.lexer.util.DefaultPattern;
+import toberumono.lexer.util.LexemeCache;
 import toberumono.structures.sexpressions.ConsCell;
 import toberumono.structures.sexpressions.ConsType;
 
@@ -29,6 +32,90 @@ public class BasicRule extends AbstractRule<ConsCell, ConsType, BasicRule, Basic
 		super(pattern, type);
 	}
 	
+	/**
+	 * Constructs a new {@link BasicRule} with the given {@link Pattern} and {@link ConsType} that produces
+	 * {@link LazyConsCell LazyConsCells}. The matched text is not extracted and {@code converter} is not called until the
+	 * {@code car} value of the {@link LazyConsCell} is first requested.
+	 * 
+	 * @param pattern
+	 *            the {@link Pattern} that describes tokens that the {@link BasicRule} can process
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} value of the {@link ConsCell ConsCells} matched by this
+	 *            {@link BasicRule rule}
+	 * @param converter
+	 *            the function that converts the matched text into the {@code car} value. If this is {@code null}, the
+	 *            {@code car} value is the matched text
+	 */
+	public BasicRule(Pattern pattern, ConsType type, Function<? super String, ?> converter) {
+		this(pattern, type, converter, false);
+	}
+	
+	/**
+	 * Constructs a new {@link BasicRule} with the given {@link Pattern} and {@link ConsType} that produces
+	 * {@link LazyConsCell LazyConsCells}. The matched text is not extracted and {@code converter} is not called until the
+	 * {@code car} value of the {@link LazyConsCell} is first requested.
+	 * 
+	 * @param pattern
+	 *            the {@link Pattern} that describes tokens that the {@link BasicRule} can process
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} value of the {@link ConsCell ConsCells} matched by this
+	 *            {@link BasicRule rule}
+	 * @param converter
+	 *            the function that converts the matched text into the {@code car} value. If this is {@code null}, the
+	 *            {@code car} value is the matched text
+	 * @param pure
+	 *            if {@code true}, the {@link BasicRule rule's} action is a {@link PureAction}. This must only be {@code true}
+	 *            if {@code converter} is free of side effects and safe to call concurrently
+	 */
+	public BasicRule(Pattern pattern, ConsType type, Function<? super String, ?> converter, boolean pure) {
+		super(pattern, PureAction.mark((lexer, state, match) -> new LazyConsCell(state.getInput(), match.start(), match.end(), converter, type), pure));
+	}
+	
+	/**
+	 * Constructs a new {@link BasicRule} with the given {@link Pattern} and {@link ConsType} whose {@code car} values are
+	 * produced by {@code converter} and shared through {@code cache}. The matched text is only extracted when it is not
+	 * already in {@code cache}.
+	 * 
+	 * @param <V>
+	 *            the type of the {@code car} values
+	 * @param pattern
+	 *            the {@link Pattern} that describes tokens that the {@link BasicRule} can process
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} value of the {@link ConsCell ConsCells} matched by this
+	 *            {@link BasicRule rule}
+	 * @param converter
+	 *            the function that converts the matched text into the {@code car} value
+	 * @param cache
+	 *            the {@link LexemeCache} in which to look up {@code car} values
+	 */
+	public <V> BasicRule(Pattern pattern, ConsType type, Function<? super String, ? extends V> converter, LexemeCache<V> cache) {
+		super(pattern, type, converter, cache);
+	}
+	
+	/**
+	 * Constructs a new {@link BasicRule} with the given {@link Pattern} and {@link ConsType} whose {@code car} values are
+	 * produced by {@code converter} and shared through {@code cache}. The matched text is only extracted when it is not
+	 * already in {@code cache}.
+	 * 
+	 * @param <V>
+	 *            the type of the {@code car} values
+	 * @param pattern
+	 *            the {@link Pattern} that describes tokens that the {@link BasicRule} can process
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} value of the {@link ConsCell ConsCells} matched by this
+	 *            {@link BasicRule rule}
+	 * @param converter
+	 *            the function that converts the matched text into the {@code car} value
+	 * @param cache
+	 *            the {@link LexemeCache} in which to look up {@code car} values
+	 * @param pure
+	 *            if {@code true}, the {@link BasicRule rule's} action is a {@link PureAction}. This must only be {@code true}
+	 *            if {@code converter} is free of side effects and safe to call concurrently
+	 */
+	public <V> BasicRule(Pattern pattern, ConsType type, Function<? super String, ? extends V> converter, LexemeCache<V> cache, boolean pure) {
+		super(pattern, type, converter, cache, pure);
+	}
+	
 	/**
 	 * Constructs a new {@link BasicRule} with the given {@link Pattern} and {@link LexerAction}.
 	 * 
@@ -56,6 +143,47 @@ public class BasicRule extends AbstractRule<ConsCell, ConsType, BasicRule, Basic
 		super(pattern, type);
 	}
 	
+	/**
+	 * Constructs a new {@link BasicRule} with the given {@link DefaultPattern} and {@link ConsType} that produces
+	 * {@link LazyConsCell LazyConsCells}. The matched text is not extracted and {@code converter} is not called until the
+	 * {@code car} value of the {@link LazyConsCell} is first requested.
+	 * 
+	 * @param pattern
+	 *            the {@link DefaultPattern} containing the regex {@link Pattern} that describes tokens that the
+	 *            {@link BasicRule} can process
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} value of the {@link ConsCell ConsCells} matched by this
+	 *            {@link BasicRule rule}
+	 * @param converter
+	 *            the function that converts the matched text into the {@code car} value. If this is {@code null}, the
+	 *            {@code car} value is the matched text
+	 */
+	public BasicRule(DefaultPattern pattern, ConsType type, Function<? super String, ?> converter) {
+		this(pattern.getPattern(), type, converter);
+	}
+	
+	/**
+	 * Constructs a new {@link BasicRule} with the given {@link DefaultPattern} and {@link ConsType} whose {@code car} values
+	 * are produced by {@code converter} and shared through {@code cache}. The matched text is only extracted when it is not
+	 * already in {@code cache}.
+	 * 
+	 * @param <V>
+	 *            the type of the {@code car} values
+	 * @param pattern
+	 *            the {@link DefaultPattern} containing the regex {@link Pattern} that describes tokens that the
+	 *            {@link BasicRule} can process
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} value of the {@link ConsCell ConsCells} matched by this
+	 *            {@link BasicRule rule}
+	 * @param converter
+	 *            the function that converts the matched text into the {@code car} value
+	 * @param cache
+	 *            the {@link LexemeCache} in which to look up {@code car} values
+	 */
+	public <V> BasicRule(DefaultPattern pattern, ConsType type, Function<? super String, ? extends V> converter, LexemeCache<V> cache) {
+		super(pattern, type, converter, cache);
+	}
+	
 	/**
 	 * Constructs a new {@link BasicRule} with the given {@link DefaultPattern} and {@link LexerAction}.
 	 * 
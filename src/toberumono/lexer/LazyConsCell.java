@@ -0,0 +1,121 @@
+package toberumono.lexer;
+
+import java.util.function.Function;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+
+/**
+ * A {@link ConsCell} whose {@code car} value is produced from the part of the input that it covers the first time
+ * {@link #getCar()} is called.<br>
+ * Until then, the {@link LazyConsCell} only stores a reference to the input, the bounds of the token, and the function used
+ * to convert the token's text into the {@code car} value. Once the {@code car} value has been produced, the reference to
+ * the input is dropped. Producing the {@code car} value is thread-safe, so the cell can be read from multiple threads.<br>
+ * <b>Note:</b> the {@code car} value is only available through {@link #getCar()}.
+ *
+ * @author Toberumono
+ * @see BasicRule#BasicRule(java.util.regex.Pattern, ConsType, Function)
+ */
+public class LazyConsCell extends ConsCell {
+	private volatile Pending pending;
+	private final int start, end;
+	private Object car;
+
+	/**
+	 * Constructs a {@link LazyConsCell} for the token that spans [{@code start}, {@code end}) in {@code input}.
+	 *
+	 * @param input
+	 *            the input that contains the token
+	 * @param start
+	 *            the index at which the token starts
+	 * @param end
+	 *            the index at which the token ends (exclusive)
+	 * @param converter
+	 *            the function that converts the token's text into the {@code car} value. If this is {@code null}, the
+	 *            {@code car} value is the token's text
+	 * @param carType
+	 *            the {@link ConsType type} of the {@code car} value
+	 */
+	public LazyConsCell(CharSequence input, int start, int end, Function<? super String, ?> converter, ConsType carType) {
+		super(null, carType);
+		this.start = start;
+		this.end = end;
+		car = null;
+		pending = new Pending(input, converter);
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * The first call produces the {@code car} value. This is safe to call from multiple threads, and the converter is
+	 * applied at most once.
+	 */
+	@Override
+	public Object getCar() {
+		if (pending != null) {
+			synchronized (this) {
+				Pending p = pending;
+				if (p != null) {
+					String text = p.input.subSequence(start, end).toString();
+					car = p.converter == null ? text : p.converter.apply(text);
+					pending = null; //Let go of the input and converter so that they can be collected
+				}
+			}
+		}
+		return car;
+	}
+
+	@Override
+	public synchronized ConsCell setCar(Object car, ConsType carType) {
+		super.setCar(car, carType);
+		return materialized(super.getCar());
+	}
+
+	@Override
+	public synchronized ConsCell replaceCar(Object car) {
+		super.replaceCar(car);
+		return materialized(super.getCar());
+	}
+
+	/**
+	 * Replaces the lazily produced {@code car} value with one that was set explicitly.
+	 */
+	private ConsCell materialized(Object car) {
+		this.car = car;
+		pending = null;
+		return this;
+	}
+
+	/**
+	 * @return {@code true} if the {@code car} value has already been produced or set
+	 */
+	public boolean isMaterialized() {
+		return pending == null;
+	}
+
+	/**
+	 * @return the index at which the token starts
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the index at which the token ends (exclusive)
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * Holds the input and converter together so that they are published and released by a single volatile write.
+	 */
+	private static final class Pending {
+		final CharSequence input;
+		final Function<? super String, ?> converter;
+
+		Pending(CharSequence input, Function<? super String, ?> converter) {
+			this.input = input;
+			this.converter = converter;
+		}
+	}
+}
@@ -3,16 +3,20 @@ package toberumono.lexer.base;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.BiFunction;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
+import toberumono.lexer.errors.LexerException;
 import toberumono.lexer.errors.PatternCollisionException;
 import toberumono.lexer.errors.UnbalancedDescenderException;
+import toberumono.lexer.util.PersistentHashMap;
 import toberumono.structures.sexpressions.ConsCell;
 import toberumono.structures.sexpressions.ConsType;
 import toberumono.structures.sexpressions.GenericConsCell;
@@ -41,6 +45,7 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 	private Map<Pattern, String> names;
 	private Map<Pattern, LexerAction<C, T, R, D, L, MatchResult>> patterns;
 	private final BiFunction<Map<?, ?>, String, Map<?, ?>> cloner;
+	private volatile Language<C, T, R, D, L> snapshot;
 	
 	/**
 	 * Constructs an empty {@link AbstractLanguage}
@@ -74,7 +79,8 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 	 * Constructs an {@link AbstractLanguage} with the given data {@link Map Maps}<br>
 	 * <b>Note:</b> the {@link Map Maps} are <i>not</i> copied in the constructor<br>
 	 * <b>Note:</b> if any of the {@link Map Maps} do not meet the requirements specified in {@link #clone()}, the
-	 * {@link #AbstractLanguage(Map, Map, Map, Map, Map, BiFunction)} constructor should be used instead
+	 * {@link #AbstractLanguage(Map, Map, Map, Map, Map, BiFunction)} constructor should be used instead<br>
+	 * <b>Note:</b> using {@link PersistentHashMap PersistentHashMaps} makes {@link #clone()} take constant time
 	 * 
 	 * @param rules
 	 *            a {@link Map} containing the {@link Rule Rules}
@@ -135,6 +141,7 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 		rules.put(name, rule);
 		names.put(rule.getPattern(), name + "::rule");
 		patterns.put(rule.getPattern(), rule.getAction());
+		invalidateSnapshot();
 	}
 	
 	@Override
@@ -144,6 +151,7 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 			return out;
 		patterns.remove(out.getPattern());
 		names.remove(out.getPattern());
+		invalidateSnapshot();
 		return out;
 	}
 	
@@ -159,6 +167,70 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 	
 	@Override
 	public synchronized void addDescender(String name, D descender) {
+		addDescender(name, descender, new DescentBlock<C, T, R, D, L>() {
+			@Override
+			public C perform(L lexer, LexerState<C, T, R, D, L> state, MatchResult match) throws LexerException {
+				if (descender.getClosePattern().matcher(match.group()).matches() && state.getDescender() == descender) //This allows descenders with the same open and close patterns to work.
+					return descender.getCloseAction().perform(lexer, state, state.getRoot());
+				descender.getOpenAction().perform(lexer, state, match);
+				return descend(lexer, state, descender);
+			}
+			
+			@Override
+			public D getDescender() {
+				return descender;
+			}
+		});
+	}
+	
+	@Override
+	public synchronized void addLazyDescender(String name, D descender, T lazyType, String... opaqueRules) {
+		List<String> opaque = Arrays.asList(opaqueRules.clone());
+		//This is deliberately not a DescentBlock so that the Lexer does not descend into it
+		addDescender(name, descender, (lexer, state, match) -> {
+			if (descender.getClosePattern().matcher(match.group()).matches() && state.getDescender() == descender)
+				return descender.getCloseAction().perform(lexer, state, state.getRoot());
+			int end = BracketIndex.findEnd(state.getLanguage(), state.getInput(), match.start(), opaque);
+			Language<C, T, R, D, L> language = state.getLanguage();
+			int languageDepth = state.getLanguageDepth();
+			descender.getOpenAction().perform(lexer, state, match);
+			if (end < 0 || state.getLanguage() != language || state.getLanguageDepth() != languageDepth)
+				return descend(lexer, state, descender);
+			LazyDescent<C, T, R, D, L> lazy = new LazyDescent<>(state.fork(descender), end);
+			state.setHead(end);
+			return lexer.getConsCellConstructor().construct(lazy, lazyType, null, lexer.getEmptyType());
+		});
+	}
+	
+	@Override
+	public synchronized void addSkippedDescender(String name, D descender, T spanType) {
+		addDescender(name, descender, (SkipBlock<C, T, R, D, L>) (lexer, state, match) -> {
+			String input = state.getInput();
+			MatchResult close = BracketIndex.findClose(descender, input, match.end());
+			int end = close == null ? input.length() : close.start(), after = close == null ? end : close.end();
+			if (close == null) {
+				ErrorRecovery<T> recovery = state.getRecovery();
+				if (recovery != null)
+					recovery.diagnostics.add(new LexerDiagnostic(LexerDiagnostic.Kind.UNCLOSED_DESCENDER, end, end, state.getDepth() + 1, "Unclosed descender"));
+			}
+			state.setHead(after);
+			return spanType == null ? null : lexer.getConsCellConstructor().construct(input.substring(match.end(), end), spanType, null, lexer.getEmptyType());
+		});
+	}
+	
+	/**
+	 * Lexes the descent that starts at the head of {@code state} and moves the head of {@code state} past it.
+	 * 
+	 * @return the result of the {@link Descender Descender's} close action
+	 */
+	private C descend(L lexer, LexerState<C, T, R, D, L> state, D descender) throws LexerException {
+		LexerState<C, T, R, D, L> descended = state.descendReusing(descender);
+		C out = ((Lexer<C, T, R, D, L>) lexer).lex(descended);
+		state.setHead(descended.getHead());
+		return out;
+	}
+	
+	private void addDescender(String name, D descender, LexerAction<C, T, R, D, L, MatchResult> openAction) {
 		if (names.containsKey(descender.getOpenPattern()))
 			throw new PatternCollisionException(descender.getOpenPattern(), names.get(descender.getOpenPattern()));
 		if (names.containsKey(descender.getClosePattern()))
@@ -166,20 +238,13 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 		descenders.put(name, descender);
 		names.put(descender.getOpenPattern(), name + "::descender.open");
 		names.put(descender.getClosePattern(), name + "::descender.close");
-		patterns.put(descender.getOpenPattern(), (lexer, state, match) -> {
-			if (descender.getClosePattern().matcher(match.group()).matches() && state.getDescender() == descender) //This allows descenders with the same open and close patterns to work.
-				return descender.getCloseAction().perform(lexer, state, state.getRoot());
-			descender.getOpenAction().perform(lexer, state, match);
-			LexerState<C, T, R, D, L> descended = state.descend(descender);
-			C out = ((Lexer<C, T, R, D, L>) lexer).lex(descended);
-			state.setHead(descended.getHead());
-			return out;
-		});
+		patterns.put(descender.getOpenPattern(), openAction);
 		patterns.put(descender.getClosePattern(), (AscentBlock<C, T, R, D, L>) (lexer, state, match) -> {
 			if (state.getDescender() != descender)
 				throw new UnbalancedDescenderException(state);
 			return descender.getCloseAction().perform(lexer, state, state.getRoot());
 		});
+		invalidateSnapshot();
 	}
 	
 	@Override
@@ -191,6 +256,7 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 		patterns.remove(out.getClosePattern());
 		names.remove(out.getOpenPattern());
 		names.remove(out.getClosePattern());
+		invalidateSnapshot();
 		return out;
 	}
 	
@@ -211,6 +277,7 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 		ignores.put(name, pattern);
 		names.put(pattern, name + "::ignore");
 		patterns.put(pattern, null);
+		invalidateSnapshot();
 	}
 	
 	@Override
@@ -220,6 +287,7 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 			return out;
 		patterns.remove(out);
 		names.remove(out);
+		invalidateSnapshot();
 		return out;
 	}
 	
@@ -243,6 +311,53 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 		return patterns;
 	}
 	
+	/**
+	 * The snapshot is built by the first call to this method after a modification made through the {@link Language
+	 * Language's} methods and is then reused until the next such modification, so building a {@link Language} one entry at
+	 * a time does not copy it once per entry. Building the snapshot takes time proportional to the size of the
+	 * {@link Language}; reading an existing one is a single volatile read.<br>
+	 * <b>Note:</b> changes made directly to the {@link Map Maps} returned by the getters are not seen by new snapshots until
+	 * the next modification made through the {@link Language Language's} methods.<br>
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Language<C, T, R, D, L> snapshot() {
+		Language<C, T, R, D, L> out = snapshot;
+		if (out != null)
+			return out;
+		synchronized (this) {
+			if (snapshot == null)
+				snapshot = createSnapshot();
+			return snapshot;
+		}
+	}
+	
+	/**
+	 * Discards the current snapshot so that the next call to {@link #snapshot()} builds a new one. This must be called at the
+	 * end of every modification while the {@link Language} is locked.
+	 */
+	private void invalidateSnapshot() {
+		snapshot = null;
+	}
+	
+	/**
+	 * Creates a new snapshot of the {@link Language}. This is only called while the {@link Language} is locked.
+	 * 
+	 * @return an immutable copy of the current contents of the {@link Language}
+	 */
+	Language<C, T, R, D, L> createSnapshot() {
+		return new LanguageSnapshot<>(freeze(rules), freeze(descenders), freeze(ignores), freeze(names), freeze(patterns));
+	}
+	
+	/**
+	 * Copies the given {@link Map} into a {@link LinkedHashMap} so that iterating over the snapshot follows the order of the
+	 * original {@link Map} without repeating whatever work the original does to produce that order (e.g. the sorting done
+	 * by {@link PersistentHashMap PersistentHashMap's} iterators).
+	 */
+	private static <K, V> Map<K, V> freeze(Map<K, V> map) {
+		return new LinkedHashMap<>(map);
+	}
+	
 	/**
 	 * <b>Note:</b> If any the internal {@link Map Maps} do not meet at least one of the following requirements, this method
 	 * will fail.
@@ -296,6 +411,8 @@ public abstract class AbstractLanguage<C extends GenericConsCell<C, T>, T extend
 	private static Map<?, ?> tryClone(Map<?, ?> map, String fieldName) {
 		if (map == null)
 			return map;
+		if (map instanceof PersistentHashMap) //This is constant-time
+			return ((PersistentHashMap<?, ?>) map).clone();
 		if (map instanceof HashMap)
 			return (Map<?, ?>) ((HashMap<?, ?>) map).clone();
 		if (map instanceof Cloneable) //If it is cloneable, try to call the clone method
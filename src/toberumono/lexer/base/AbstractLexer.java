@@ -1,18 +1,39 @@
 package toberumono.lexer.base;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import toberumono.lexer.errors.EmptyInputException;
+import toberumono.lexer.errors.LexerAbortedException;
 import toberumono.lexer.errors.LexerException;
+import toberumono.lexer.errors.MatchBudgetExceededException;
+import toberumono.lexer.errors.UnbalancedDescenderException;
 import toberumono.lexer.errors.UnrecognizedCharacterException;
 import toberumono.lexer.util.DefaultIgnorePatterns;
 import toberumono.lexer.util.DefaultPattern;
+import toberumono.lexer.util.PersistentHashMap;
 import toberumono.structures.sexpressions.ConsCell;
 import toberumono.structures.sexpressions.ConsCellConstructor;
 import toberumono.structures.sexpressions.ConsType;
@@ -22,7 +43,13 @@ import toberumono.structures.sexpressions.GenericConsCell;
  * An implementation of the core components of {@link Lexer}. This represents a generic tokenizer that uses a set of
  * user-defined rules to tokenize a {@link String} input.<br>
  * While this implementation is designed to work with cons-cell esque tokens (e.g. those from Lisp), it can theoretically be
- * modified to work with other structures.
+ * modified to work with other structures.<br>
+ * <b>Thread safety:</b> a single {@link AbstractLexer} can be shared by any number of threads calling the {@code lex}
+ * methods concurrently. All of the data for a run is kept in its {@link LexerState}, and each run is bound to a
+ * {@link Language#snapshot() snapshot} of the {@link Language}, so {@link Rule Rules}, {@link Descender Descenders}, and
+ * ignores can also be added or removed while other threads are lexing. There is no need to {@link #clone() clone} the
+ * {@link AbstractLexer} for each thread. The {@link LexerAction actions} of the {@link Rule Rules} and {@link Descender
+ * Descenders} must themselves be thread-safe.
  * 
  * @author Toberumono
  * @param <C>
@@ -40,7 +67,15 @@ public class AbstractLexer<C extends GenericConsCell<C, T>, T extends ConsType,
 		implements Lexer<C, T, R, D, L> {
 	private Language<C, T, R, D, L> language;
 	private final ConsCellConstructor<C, T> cellConstructor;
+	private ThreadLocal<ConsCellArena<C, T>> arena;
 	private final T emptyType;
+	/**
+	 * The minimum length of a descent that {@link #lexParallel(String, Collection, ForkJoinPool)} lexes as a separate task
+	 */
+	private static final int MIN_PARALLEL_SPAN = 4096;
+	private volatile boolean slicingText;
+	private volatile MatchBudget matchBudget;
+	private volatile boolean stacklessExceptions;
 	
 	/**
 	 * Constructs an {@link AbstractLexer} with the provided cell constructor.
@@ -87,8 +122,11 @@ public class AbstractLexer<C extends GenericConsCell<C, T>, T extends ConsType,
 	public AbstractLexer(Map<String, R> rules, Map<String, D> descenders, Map<String, Pattern> ignores, Map<Pattern, LexerAction<C, T, R, D, L, MatchResult>> patterns,
 			ConsCellConstructor<C, T> cellConstructor, LanguageConstructor<C, T, R, D, L> languageConstructor, T emptyType, DefaultPattern... ignore) {
 		this.cellConstructor = cellConstructor;
+		this.arena = new ThreadLocal<>();
 		this.emptyType = emptyType;
-		this.language = languageConstructor.construct(rules, descenders, ignores, new HashMap<>(), patterns);
+		this.slicingText = false;
+		//The names map is created here, so match the kind of map that was passed in for the patterns
+		this.language = languageConstructor.construct(rules, descenders, ignores, patterns instanceof PersistentHashMap ? new PersistentHashMap<>() : new HashMap<>(), patterns);
 		for (DefaultPattern p : ignore)
 			this.addIgnore(p);
 	}
@@ -105,35 +143,367 @@ public class AbstractLexer<C extends GenericConsCell<C, T>, T extends ConsType,
 		return lex(state);
 	}
 	
+	@Override
+	public C lexWithArena(String input, ConsCellArena<C, T> arena) throws LexerException {
+		ConsCellArena<C, T> previous = this.arena.get();
+		this.arena.set(arena);
+		try {
+			return lex(input);
+		}
+		catch (LexerException e) { //The arena recycles the cells once it is released, so the exceptions' states are copied while they are still valid
+			for (Throwable t = e; t != null; t = t.getCause())
+				if (t instanceof LexerException)
+					((LexerException) t).getState();
+			throw e;
+		}
+		finally {
+			if (previous == null)
+				this.arena.remove();
+			else
+				this.arena.set(previous);
+		}
+	}
+	
+	@Override
+	public C lexWithDeadline(String input, LexerDeadline deadline) throws LexerException {
+		@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+		LexerState<C, T, R, D, L> state = new LexerState<>(input, 0, null, (L) this, getLanguage()).setDeadline(deadline);
+		try {
+			return lex(state);
+		}
+		catch (LexerAbortedException e) {
+			if (e.getDepth() == 0) //Checking this does not require the exception to copy its state
+				throw e;
+			throw new LexerAbortedException(e.getReason(), e.getPosition(), state, e); //Report the partial top-level result
+		}
+	}
+	
+	@Override
+	public CompletableFuture<C> lexAsync(String input, Duration timeout, Executor executor) {
+		LexerDeadline deadline = LexerDeadline.after(timeout);
+		CompletableFuture<C> future = new CompletableFuture<>();
+		future.whenComplete((result, error) -> {
+			if (future.isCancelled())
+				deadline.cancel();
+		});
+		try {
+			executor.execute(() -> {
+				if (future.isDone())
+					return;
+				try {
+					future.complete(lexWithDeadline(input, deadline));
+				}
+				catch (Throwable t) {
+					future.completeExceptionally(t);
+				}
+			});
+		}
+		catch (RejectedExecutionException e) { //The run never started, so it is reported through the future like any other failure
+			deadline.cancel();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+	
+	@Override
+	public C lexParallel(String input, Collection<String> opaqueRules, ForkJoinPool pool) throws LexerException {
+		@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+		LexerState<C, T, R, D, L> state = new LexerState<>(input, 0, null, (L) this, getLanguage());
+		if (input.length() == 0)
+			throw new EmptyInputException(state);
+		Language<C, T, R, D, L> language = state.getLanguage();
+		BracketIndex index = BracketIndex.build(language, input, opaqueRules);
+		AtomicBoolean aborted = new AtomicBoolean(false);
+		try {
+			return pool.invoke(new SubtreeTask(state, index, input.length(), null, 0, aborted));
+		}
+		catch (RuntimeException e) { //Either the prepass was wrong or the input has an error, so the sequential lexer produces the correct result
+			aborted.set(true); //Stops any SubtreeTasks that are still running before the actions are performed again
+			@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+			LexerState<C, T, R, D, L> sequential = new LexerState<>(input, 0, null, (L) this, language);
+			return lex(sequential);
+		}
+	}
+	
+	/**
+	 * Lexes one level of a {@link LexerState} for {@link #lexParallel(String, Collection, ForkJoinPool)}, forking a new
+	 * {@link SubtreeTask} for each large descent that the {@link BracketIndex} has paired.<br>
+	 * If any {@link SubtreeTask} in a run fails, it sets the run's {@code aborted} flag and cancels the tasks that it
+	 * forked, and every other {@link SubtreeTask} in the run stops at its next token.
+	 */
+	private final class SubtreeTask extends RecursiveTask<C> {
+		private final LexerState<C, T, R, D, L> state;
+		private final BracketIndex index;
+		private final int end, languageDepth;
+		private final Language<C, T, R, D, L> language;
+		private final AtomicBoolean aborted;
+		
+		/**
+		 * @param end
+		 *            the position at which the descent must end
+		 * @param language
+		 *            the {@link Language} that must be active when the descent ends or {@code null} for top-level
+		 *            {@link LexerState LexerStates}
+		 * @param languageDepth
+		 *            the size that the {@link Language} stack must have when the descent ends
+		 * @param aborted
+		 *            the flag that is set when any {@link SubtreeTask} in the run fails
+		 */
+		SubtreeTask(LexerState<C, T, R, D, L> state, BracketIndex index, int end, Language<C, T, R, D, L> language, int languageDepth, AtomicBoolean aborted) {
+			this.state = state;
+			this.index = index;
+			this.end = end;
+			this.language = language;
+			this.languageDepth = languageDepth;
+			this.aborted = aborted;
+		}
+		
+		@Override
+		protected C compute() {
+			List<ForkJoinTask<C>> forks = new ArrayList<>();
+			try {
+				return compute(forks);
+			}
+			catch (RuntimeException e) {
+				aborted.set(true);
+				for (ForkJoinTask<C> fork : forks)
+					fork.cancel(false);
+				throw e;
+			}
+		}
+		
+		/**
+		 * @param forks
+		 *            a {@link List} to which every forked {@link SubtreeTask} is added so that they can be cancelled if this
+		 *            {@link SubtreeTask} fails
+		 */
+		private C compute(List<ForkJoinTask<C>> forks) {
+			@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+			L lexer = (L) AbstractLexer.this;
+			List<Object> pending = null; //The cells and SubtreeTasks produced after the first fork, in order
+			for (int lim = state.getInput().length(); state.getHead() < lim;) {
+				if (aborted.get())
+					throw new CancellationException();
+				Matcher longest = findLongest(state);
+				LexerAction<C, T, R, D, L, MatchResult> match = state.getLanguage().getPatterns().get(longest.pattern());
+				state.advance(longest);
+				if (match == null) //Handle ignores
+					continue;
+				if (match instanceof DescentBlock) {
+					D descender = ((DescentBlock<C, T, R, D, L>) match).getDescender();
+					int close = index.getEnd(longest.start());
+					if (close - longest.start() >= MIN_PARALLEL_SPAN && !(descender.getClosePattern().matcher(longest.group()).matches() && state.getDescender() == descender)) {
+						Language<C, T, R, D, L> before = state.getLanguage();
+						int depth = state.getLanguageDepth();
+						descender.getOpenAction().perform(lexer, state, longest);
+						if (state.getLanguage() == before && state.getLanguageDepth() == depth) {
+							if (pending == null)
+								pending = new ArrayList<>();
+							SubtreeTask task = new SubtreeTask(state.fork(descender), index, close, before, depth, aborted);
+							forks.add(task);
+							pending.add(task.fork());
+							state.setHead(close);
+							continue;
+						}
+						//The open action changed the Language, so the descent is lexed here (this is the rest of DescentBlock.perform)
+						LexerState<C, T, R, D, L> descended = state.descendReusing(descender);
+						C out = lex(descended);
+						state.setHead(descended.getHead());
+						pending = add(state, pending, out);
+						continue;
+					}
+				}
+				if (match instanceof AscentBlock) {
+					pending = flush(state, pending); //The close action needs all of the tokens in the descent
+					C cell = match.perform(lexer, state, longest);
+					if (state.getHead() != end || state.getLanguage() != language || state.getLanguageDepth() != languageDepth)
+						throw new IllegalStateException("The descent did not end where the prepass predicted");
+					return cell;
+				}
+				pending = add(state, pending, match.perform(lexer, state, longest));
+			}
+			if (language != null) //Only the top-level LexerState can reach the end of the input
+				throw new IllegalStateException("The descent did not end where the prepass predicted");
+			flush(state, pending);
+			return state.getRoot();
+		}
+		
+		/**
+		 * Appends {@code cell} to the {@link LexerState} or, if there are pending cells, to {@code pending}.
+		 * 
+		 * @return the new value of {@code pending}
+		 */
+		private List<Object> add(LexerState<C, T, R, D, L> state, List<Object> pending, C cell) {
+			if (cell == null)
+				return pending;
+			if (pending == null)
+				state.appendMatch(cell);
+			else
+				pending.add(cell);
+			return pending;
+		}
+		
+		/**
+		 * Waits for the forked {@link SubtreeTask SubtreeTasks} in {@code pending} and appends all of the pending cells to the
+		 * {@link LexerState} in order.
+		 * 
+		 * @return the new value of {@code pending} (which is always {@code null})
+		 */
+		@SuppressWarnings("unchecked")
+		private List<Object> flush(LexerState<C, T, R, D, L> state, List<Object> pending) {
+			if (pending != null) {
+				for (Object o : pending) {
+					C cell = o instanceof RecursiveTask ? ((RecursiveTask<C>) o).join() : (C) o;
+					if (cell != null)
+						state.appendMatch(cell);
+				}
+			}
+			return null;
+		}
+	}
+	
+	@Override
+	public C lexSelective(String input, Collection<String> keep) throws LexerException {
+		@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+		LexerState<C, T, R, D, L> state = new LexerState<>(input, 0, null, (L) this, getLanguage()).setSelection(new Selection(keep));
+		return lex(state);
+	}
+	
+	@Override
+	public RecoveredResult<C> lexRecovering(String input, T errorType, Pattern sync) throws LexerException {
+		ErrorRecovery<T> recovery = new ErrorRecovery<>(errorType, sync);
+		if (input.length() == 0)
+			return new RecoveredResult<>(null, recovery.diagnostics);
+		@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+		LexerState<C, T, R, D, L> state = new LexerState<>(input, 0, null, (L) this, getLanguage()).setRecovery(recovery);
+		return new RecoveredResult<>(lex(state), recovery.diagnostics);
+	}
+	
+	/**
+	 * {@link Descender Descenders} are handled in a single loop with an explicit stack of the enclosing
+	 * {@link LexerState LexerStates} instead of by recursing through their open actions, so the depth of nesting is limited
+	 * only by the available memory.
+	 */
 	@Override
 	public C lex(LexerState<C, T, R, D, L> state) throws LexerException {
-		if (state.getHead() >= state.getInput().length())
+		ErrorRecovery<T> recovery = state.getRecovery();
+		if (state.getHead() >= state.getInput().length() && (recovery == null || state.getDescender() == null))
 			throw new EmptyInputException(state);
-		for (int lim = state.getInput().length(); state.getHead() < lim;) {
-			Matcher longest = null;
-			LexerAction<C, T, R, D, L, MatchResult> match = null;
-			for (Pattern p : state.getLanguage().getPatterns().keySet()) {
-				Matcher m = p.matcher(state.getInput());
-				if (m.find(state.getHead()) && m.start() == state.getHead() && (longest == null || m.end() > longest.end() ||
-						(state.getDescender() != null && m.end() == longest.end() && p == state.getDescender().getClosePattern()))) {
-					longest = m;
-					match = state.getLanguage().getPatterns().get(p);
+		@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+		L lexer = (L) this;
+		Deque<LexerState<C, T, R, D, L>> frames = null; //The states that enclose the current one
+		Selection selection = state.getSelection();
+		BitSet discards = null; //The frames whose descents' close actions' results are replaced by their contents
+		for (int lim = state.getInput().length();;) {
+			if (state.getHead() >= lim) {
+				C out = state.getRoot(), contents = out;
+				if (recovery != null && state.getDescender() != null) { //Close the descender at the end of the input
+					recovery.diagnostics.add(new LexerDiagnostic(LexerDiagnostic.Kind.UNCLOSED_DESCENDER, lim, lim, state.getDepth(), "Unclosed descender"));
+					out = state.getDescender().getCloseAction().perform(lexer, state, out);
 				}
+				if (frames == null || frames.isEmpty())
+					return out;
+				state = ascend(frames, state, discards != null && discards.get(frames.size() - 1) ? contents : out);
+				continue;
 			}
-			if (longest == null)
-				throw new UnrecognizedCharacterException(state);
+			Matcher longest = recovery == null ? findLongest(state) : findLongestMatch(state); //Recovery does not construct exceptions
+			if (longest == null) {
+				skip(state, recovery, LexerDiagnostic.Kind.UNRECOGNIZED_INPUT, state.getHead(), findRecoveryPoint(state, recovery), "Unrecognized input");
+				continue;
+			}
+			LexerAction<C, T, R, D, L, MatchResult> match = state.getLanguage().getPatterns().get(longest.pattern());
 			state.advance(longest);
 			if (match == null) //Handle ignores
 				continue;
-			@SuppressWarnings("unchecked")
-			C cell = match.perform((L) this, state, longest);
-			if (match instanceof AscentBlock)
-				return cell;
-			if (cell != null)
+			Selection.Filter filter = selection == null ? null : selection.getFilter(state.getLanguage());
+			if (filter != null && filter.dropped.contains(longest.pattern())) //Rules that are not kept are only matched
+				continue;
+			boolean discard = filter != null && filter.discarded.contains(longest.pattern());
+			if (match instanceof DescentBlock) {
+				D descender = ((DescentBlock<C, T, R, D, L>) match).getDescender();
+				//This mirrors DescentBlock.perform, which allows descenders with the same open and close patterns to work.
+				if (!(descender.getClosePattern().matcher(longest.group()).matches() && state.getDescender() == descender)) {
+					descender.getOpenAction().perform(lexer, state, longest);
+					LexerState<C, T, R, D, L> descended = state.descendReusing(descender);
+					if (descended.getHead() >= lim && recovery == null) //Lexer.lex would be called with an empty input here
+						throw new EmptyInputException(descended);
+					if (frames == null)
+						frames = new ArrayDeque<>();
+					if (discard)
+						(discards == null ? discards = new BitSet() : discards).set(frames.size());
+					else if (discards != null)
+						discards.clear(frames.size());
+					frames.push(state);
+					state = descended;
+					continue;
+				}
+			}
+			if (recovery != null && match instanceof AscentBlock && (state.getDescender() == null || state.getDescender().getClosePattern() != longest.pattern())) {
+				skip(state, recovery, LexerDiagnostic.Kind.UNBALANCED_DESCENDER, longest.start(), longest.end(), "Unbalanced descender close token");
+				continue;
+			}
+			C contents = state.getRoot(), cell = match.perform(lexer, state, longest);
+			if (match instanceof AscentBlock) {
+				if (frames == null || frames.isEmpty())
+					return cell;
+				state = ascend(frames, state, discards != null && discards.get(frames.size() - 1) ? contents : cell);
+				continue;
+			}
+			if (cell != null && !discard)
 				state.appendMatch(cell);
 		}
-		C out = state.getRoot();
-		return out;
+	}
+	
+	/**
+	 * Returns to the {@link LexerState} that encloses {@code descended}, moving its head past the descent and appending the
+	 * descent's result to it (this is what {@link DescentBlock#perform(Lexer, LexerState, Object)} does after its recursive
+	 * call to {@link #lex(LexerState)} returns).
+	 * 
+	 * @return the enclosing {@link LexerState}
+	 */
+	private LexerState<C, T, R, D, L> ascend(Deque<LexerState<C, T, R, D, L>> frames, LexerState<C, T, R, D, L> descended, C out) {
+		LexerState<C, T, R, D, L> state = frames.pop();
+		state.setHead(descended.getHead());
+		if (out != null)
+			state.appendMatch(out);
+		return state;
+	}
+	
+	/**
+	 * Finds the position to which a run in recovery mode skips when none of the {@link Pattern Patterns} match at the head
+	 * position. This is the start of the next match of the sync {@link Pattern} if there is one, and otherwise the first
+	 * position after the head position at which any {@link Pattern} in the active {@link Language} matches.
+	 * 
+	 * @return the position to skip to (this is the length of the input if there is no such position)
+	 */
+	private int findRecoveryPoint(LexerState<C, T, R, D, L> state, ErrorRecovery<T> recovery) throws LexerException {
+		int from = state.getHead() + 1, next = state.getInput().length();
+		try {
+			if (recovery.sync != null) {
+				Matcher m = recovery.sync.matcher(state.getMatchInput());
+				return m.find(from) ? m.start() : next;
+			}
+			for (Pattern p : state.getLanguage().getPatterns().keySet()) {
+				Matcher m = p.matcher(state.getMatchInput()).region(from, next);
+				if (m.find())
+					next = m.start();
+			}
+		}
+		catch (CheckingCharSequence.Abort e) {
+			throw new LexerAbortedException(e.reason, state.getHead(), state);
+		}
+		return next;
+	}
+	
+	/**
+	 * Records a {@link LexerDiagnostic} for the input in [{@code start}, {@code end}), emits an error token for it (if the
+	 * run has an error type), and moves the head to {@code end}.
+	 */
+	private void skip(LexerState<C, T, R, D, L> state, ErrorRecovery<T> recovery, LexerDiagnostic.Kind kind, int start, int end, String message) {
+		recovery.diagnostics.add(new LexerDiagnostic(kind, start, end, state.getDepth(), message));
+		if (recovery.errorType != null)
+			state.appendMatch(getConsCellConstructor().construct(state.getInput().substring(start, end), recovery.errorType, null, getEmptyType()));
+		state.setHead(end);
 	}
 	
 	@Override
@@ -142,43 +512,419 @@ public class AbstractLexer<C extends GenericConsCell<C, T>, T extends ConsType,
 			throw new EmptyInputException(state);
 		int initial = state.getHead();
 		try {
-			if (state.getHead() >= state.getInput().length())
+			LexerState.Lookahead<C, T, R, D, L> next = lookahead(state, 0);
+			if (next == null) { //Only ignored input remains
+				state.setHead(state.getInput().length());
+				C out = state.getRoot();
+				return out;
+			}
+			if (next.action instanceof AscentBlock) {
+				if (state.getDescender() != null && next.pattern == state.getDescender().getClosePattern()) {
+					state.setHead(initial);
+					throw new EmptyInputException(state);
+				}
+				state.setHead(next.end);
+				throw new UnrecognizedCharacterException(state);
+			}
+			if (!next.performed)
+				perform(state, next, 0);
+			if (advance) {
+				state.setHead(next.after);
+				state.pollLookahead();
+			}
+			return next.cell;
+		}
+		finally {
+			if (!advance)
+				state.setHead(initial);
+		}
+	}
+	
+	@Override
+	public C peek(LexerState<C, T, R, D, L> state, int k) throws LexerException {
+		if (k < 0)
+			throw new IndexOutOfBoundsException("Cannot peek at a negative number of tokens ahead.");
+		for (int i = 0;; i++) {
+			LexerState.Lookahead<C, T, R, D, L> next = lookahead(state, i);
+			if (next == null || next.action instanceof AscentBlock) //Tokens past the end of the descent cannot be seen
 				throw new EmptyInputException(state);
-			for (int lim = state.getInput().length(); state.getHead() < lim;) {
-				Matcher longest = null;
-				LexerAction<C, T, R, D, L, MatchResult> match = null;
-				for (Pattern p : state.getLanguage().getPatterns().keySet()) {
-					Matcher m = p.matcher(state.getInput());
-					if (m.find(state.getHead()) && m.start() == state.getHead() && (longest == null || m.end() > longest.end() ||
-							(state.getDescender() != null && m.end() == longest.end() && p == state.getDescender().getClosePattern()))) {
-						longest = m;
-						match = state.getLanguage().getPatterns().get(p);
-					}
+			if (!next.performed)
+				perform(state, next, i);
+			if (i == k)
+				return next.cell;
+		}
+	}
+	
+	@Override
+	public boolean hasNext(LexerState<C, T, R, D, L> state) {
+		if (state.getHead() >= state.getInput().length())
+			return false;
+		LexerState.Lookahead<C, T, R, D, L> next;
+		try {
+			next = lookahead(state, 0);
+		}
+		catch (LexerException e) { //There is input, but it is the next call to getNextConsCell that should report the error
+			return true;
+		}
+		if (next == null) {
+			state.setHead(state.getInput().length());
+			return false;
+		}
+		state.setHead(next.start); //Skip the ignored input, which keeps the lookahead buffer valid
+		return state.getDescender() == null || next.pattern != state.getDescender().getClosePattern();
+	}
+	
+	/**
+	 * Fills the {@link LexerState LexerState's} lookahead buffer until it holds at least {@code k + 1} tokens. This only
+	 * matches tokens; it does not perform their actions.
+	 * 
+	 * @return the {@code k}th token or {@code null} if only ignored input remains before it
+	 */
+	private LexerState.Lookahead<C, T, R, D, L> lookahead(LexerState<C, T, R, D, L> state, int k) throws LexerException {
+		LexerState.Lookahead<C, T, R, D, L> token = state.getLookahead(k);
+		if (token != null)
+			return token;
+		int initial = state.getHead(), lim = state.getInput().length();
+		try {
+			for (int size = state.getLookaheadSize(); size <= k; size++) {
+				LexerState.Lookahead<C, T, R, D, L> previous = size == 0 ? null : state.getLookahead(size - 1);
+				if (previous != null && previous.action instanceof AscentBlock) //The buffer cannot extend past the end of the descent
+					return null;
+				int from = previous == null ? initial : previous.after;
+				state.setHead(from);
+				for (token = null; token == null;) {
+					if (state.getHead() >= lim)
+						return null;
+					Matcher longest = findLongest(state);
+					LexerAction<C, T, R, D, L, MatchResult> action = state.getLanguage().getPatterns().get(longest.pattern());
+					if (action == null) //Handle ignores
+						state.advance(longest);
+					else
+						token = new LexerState.Lookahead<>(from, longest.pattern(), longest.toMatchResult(), action, state.getLanguage());
 				}
-				if (longest == null)
-					throw new UnrecognizedCharacterException(state);
-				state.advance(longest);
-				if (match == null) //Handle ignores
+				state.addLookahead(token);
+			}
+			return token;
+		}
+		finally {
+			state.setHead(initial);
+		}
+	}
+	
+	/**
+	 * Performs the action of the {@code i}th token in the {@link LexerState LexerState's} lookahead buffer without moving the
+	 * head position. If the action moves the head position past the end of the token (as descents do) or changes the active
+	 * {@link Language}, the tokens after it in the buffer are discarded.
+	 */
+	private void perform(LexerState<C, T, R, D, L> state, LexerState.Lookahead<C, T, R, D, L> token, int i) throws LexerException {
+		int initial = state.getHead();
+		state.setHead(token.end);
+		try {
+			@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+			C cell = token.action.perform((L) this, state, token.match);
+			token.cell = cell;
+			token.performed = true;
+			token.after = state.getHead();
+			token.afterLanguage = state.getLanguage();
+		}
+		finally {
+			state.setHead(initial);
+		}
+		if (token.after != token.end || state.getLanguage() != token.language)
+			state.truncateLookahead(i + 1);
+	}
+	
+	@Override
+	public LexedDocument<C, T, R, D, L> lexDocument(String input) throws LexerException {
+		@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+		LexerState<C, T, R, D, L> state = new LexerState<>(input, 0, null, (L) this, getLanguage());
+		LexedDocument.Builder<C, T, R, D, L> builder = new LexedDocument.Builder<>(input.length() / 8);
+		lexDocument(state, builder, null, 0, 0);
+		return builder.build(input, state.getRoot(), state.getLast());
+	}
+	
+	@Override
+	public LexedDocument<C, T, R, D, L> relex(LexedDocument<C, T, R, D, L> previous, int offset, int removed, String inserted) throws LexerException {
+		String old = previous.getInput();
+		if (offset < 0 || removed < 0 || offset + removed > old.length())
+			throw new IndexOutOfBoundsException("The edit [" + offset + ", " + (offset + removed) + ") is not within the input (length " + old.length() + ")");
+		String input = old.substring(0, offset) + inserted + old.substring(offset + removed);
+		//A token that ends exactly at the offset could be extended by the edit, so it has to be re-lexed as well
+		int first = previous.indexOf(offset);
+		@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+		LexerState<C, T, R, D, L> state = first > 0 ? new LexerState<>(input, previous.getEnd(first - 1), null, (L) this, previous.getLanguagesAfter(first - 1))
+				: new LexerState<>(input, 0, null, (L) this, getLanguage());
+		LexedDocument.Builder<C, T, R, D, L> builder = new LexedDocument.Builder<>(8);
+		int delta = inserted.length() - removed, next = lexDocument(state, builder, previous, offset + removed, delta);
+		
+		//Splice the new cells in place of the old ones. Nothing in previous is modified until the edit has been lexed.
+		C prefixLast = first == 0 ? null : first < previous.size() ? previous.getCell(first).getPrevious() : previous.getLastCell();
+		C suffixHead = next < previous.size() ? previous.getCell(next) : null;
+		for (C cell = first < previous.size() ? previous.getCell(first) : null, following; cell != suffixHead; cell = following) {
+			following = cell.getNext();
+			cell.remove();
+		}
+		C root = prefixLast != null ? previous.getRoot() : state.getRoot() != null ? state.getRoot() : suffixHead;
+		if (state.getRoot() != null) {
+			if (prefixLast != null)
+				prefixLast.insert(state.getRoot());
+			else if (suffixHead != null)
+				state.getLast().append(suffixHead);
+		}
+		C last = suffixHead != null ? previous.getLastCell() : state.getLast() != null ? state.getLast() : prefixLast;
+		return builder.splice(previous, first, next, delta, input, root, last);
+	}
+	
+	/**
+	 * Lexes top-level tokens into {@code builder} until the input is exhausted or, if {@code previous} is not {@code null},
+	 * until the new tokens re-synchronize with the tokens in {@code previous}.
+	 * 
+	 * @return the index of the first token in {@code previous} that can be reused
+	 */
+	private int lexDocument(LexerState<C, T, R, D, L> state, LexedDocument.Builder<C, T, R, D, L> builder, LexedDocument<C, T, R, D, L> previous, int editEnd, int delta)
+			throws LexerException {
+		for (int lim = state.getInput().length(); state.getHead() < lim;) {
+			int start = state.getHead();
+			Matcher longest = findLongest(state);
+			LexerAction<C, T, R, D, L, MatchResult> match = state.getLanguage().getPatterns().get(longest.pattern());
+			state.advance(longest);
+			if (match == null) //Handle ignores
+				continue;
+			@SuppressWarnings("unchecked")
+			C cell = match.perform((L) this, state, longest);
+			if (match instanceof AscentBlock)
+				break;
+			if (cell == null)
+				continue;
+			state.appendMatch(cell);
+			builder.add(start, state.getHead(), cell, state.getLanguages(builder.getLastLanguages()));
+			int oldEnd = state.getHead() - delta;
+			if (previous != null && oldEnd >= editEnd) {
+				int resync = previous.indexOf(oldEnd);
+				if (resync < previous.size() && previous.getEnd(resync) == oldEnd && state.hasLanguages(previous.getLanguagesAfter(resync)))
+					return resync + 1;
+			}
+		}
+		return previous == null ? 0 : previous.size();
+	}
+	
+	@Override
+	public TokenTape<C, T, R, D, L> lexToTape(String input) throws LexerException {
+		@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+		TokenTape<C, T, R, D, L> tape = lexInto(input, new TokenTape<>((L) this, input, input.length() / 4));
+		return tape;
+	}
+	
+	@Override
+	public C lexTwoPhase(String input, ForkJoinPool pool) throws LexerException {
+		return lexToTape(input).getRoot(pool);
+	}
+	
+	@Override
+	public TokenStore<C, T, R, D, L> lexToStore(String input, long spillThreshold) throws LexerException, IOException {
+		TokenStore<C, T, R, D, L> store = new TokenStore<>(input, spillThreshold);
+		Throwable failure;
+		try {
+			return lexInto(input, store);
+		}
+		catch (UncheckedIOException e) { //TokenSink.add cannot throw checked exceptions, so TokenStore wraps spill failures
+			failure = e.getCause();
+		}
+		catch (RuntimeException | Error e) {
+			failure = e;
+		}
+		try {
+			store.close();
+		}
+		catch (IOException | RuntimeException e) {
+			failure.addSuppressed(e);
+		}
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		throw (RuntimeException) failure;
+	}
+	
+	@Override
+	public <S extends TokenSink<C, T, R, D, L>> S lexInto(String input, S sink) throws LexerException {
+		@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+		L lexer = (L) this;
+		LexerState<C, T, R, D, L> state = new LexerState<>(input, 0, null, lexer, getLanguage());
+		Deque<LexerState<C, T, R, D, L>> outer = new ArrayDeque<>();
+		int[] parents = new int[16];
+		@SuppressWarnings("unchecked")
+		Language<C, T, R, D, L>[][] restores = new Language[16][]; //The Language stacks from before the open descenders' open actions
+		Language<C, T, R, D, L>[] recorded = null; //The most recently recorded Language stack, which is reused while it is unchanged
+		int depth = 0, parent = -1;
+		Language<C, T, R, D, L> language = null;
+		Map<Pattern, D> opens = null, closes = null;
+		for (int lim = input.length(); state.getHead() < lim;) {
+			Matcher longest = findLongest(state);
+			if (language != state.getLanguage()) {
+				language = state.getLanguage();
+				opens = new HashMap<>();
+				closes = new HashMap<>();
+				for (D descender : language.getDescenders().values()) {
+					opens.put(descender.getOpenPattern(), descender);
+					closes.put(descender.getClosePattern(), descender);
+				}
+			}
+			LexerAction<C, T, R, D, L, MatchResult> action = language.getPatterns().get(longest.pattern());
+			state.advance(longest);
+			if (action == null) //Handle ignores
+				continue;
+			if (action instanceof SkipBlock) { //The descent is recorded as a single token
+				action.perform(lexer, state, longest);
+				sink.add(sink.getTypes().getId(language, longest.pattern(), action, null), longest.start(), state.getHead(), parent);
+				continue;
+			}
+			D descender = opens.get(longest.pattern());
+			if (descender != null && !(state.getDescender() == descender && descender.getClosePattern().matcher(longest.group()).matches())) {
+				if (depth == parents.length) {
+					parents = Arrays.copyOf(parents, depth * 2);
+					restores = Arrays.copyOf(restores, depth * 2);
+				}
+				restores[depth] = recorded = state.getLanguages(recorded);
+				descender.getOpenAction().perform(lexer, state, longest);
+				recorded = state.getLanguages(recorded);
+				parents[depth++] = parent;
+				parent = sink.add(sink.getTypes().getId(language, longest.pattern(), action, descender, recorded), longest.start(), -1, parent);
+				outer.push(state);
+				state = state.descendReusing(descender);
+				if (state.getHead() >= lim) //Lexer.lex would be called with an empty input here
+					throw new EmptyInputException(state);
+				continue;
+			}
+			if (descender != null || (descender = closes.get(longest.pattern())) != null) {
+				if (state.getDescender() != descender)
+					throw new UnbalancedDescenderException(state);
+				sink.close(parent, state.getHead(), true);
+				parent = parents[--depth];
+				outer.peek().setHead(state.getHead());
+				state = outer.pop();
+				//The close action is deferred, so this undoes the open action's changes to the Language stack in its place
+				state.setLanguages(restores[depth]);
+				restores[depth] = null;
+				continue;
+			}
+			sink.add(sink.getTypes().getId(language, longest.pattern(), action, null), longest.start(), longest.end(), parent);
+		}
+		for (; depth > 0; parent = parents[--depth]) //Descenders that are still open at the end of the input
+			sink.close(parent, input.length(), false);
+		sink.finish();
+		return sink;
+	}
+	
+	/**
+	 * Finds the longest match that starts at the {@link LexerState LexerState's} head position.<br>
+	 * Ties are broken in favor of the close {@link Pattern} of the {@link LexerState LexerState's} {@link Descender} and then
+	 * in favor of the {@link Pattern} that comes first in the active {@link Language}.<br>
+	 * This does <i>not</i> modify the passed {@link LexerState}.
+	 * 
+	 * @param state
+	 *            the current {@link LexerState}
+	 * @return a {@link Matcher} for the longest match
+	 * @throws UnrecognizedCharacterException
+	 *             if none of the {@link Pattern Patterns} in the active {@link Language} match at the head position
+	 * @throws LexerAbortedException
+	 *             if the {@link LexerState LexerState's} {@link LexerDeadline} requires the run to stop
+	 * @throws MatchBudgetExceededException
+	 *             if a {@link Pattern} exceeds the {@link #getMatchBudget() match budget} and its {@link MatchBudget.Policy
+	 *             Policy} is {@link MatchBudget.Policy#FAIL FAIL}
+	 */
+	protected Matcher findLongest(LexerState<C, T, R, D, L> state) throws LexerException {
+		Matcher longest = findLongestMatch(state);
+		if (longest == null)
+			throw new UnrecognizedCharacterException(state);
+		return longest;
+	}
+	
+	/**
+	 * The same as {@link #findLongest(LexerState)}, but this returns {@code null} instead of throwing an
+	 * {@link UnrecognizedCharacterException} if none of the {@link Pattern Patterns} match. Runs in recovery mode use this
+	 * so that they do not construct an exception for every piece of unrecognized input.
+	 */
+	private Matcher findLongestMatch(LexerState<C, T, R, D, L> state) throws LexerException {
+		LexerDeadline deadline = state.getDeadline();
+		if (deadline != null) {
+			LexerAbortedException.Reason reason = deadline.poll();
+			if (reason != null)
+				throw new LexerAbortedException(reason, state.getHead(), state);
+		}
+		MatchBudget budget = matchBudget;
+		if (budget != null)
+			return findLongest(state, budget);
+		Matcher longest = null;
+		try {
+			for (Pattern p : state.getLanguage().getPatterns().keySet()) {
+				Matcher m = p.matcher(state.getMatchInput());
+				if (matchAt(m, state.getHead()) && (longest == null || m.end() > longest.end() ||
+						(state.getDescender() != null && m.end() == longest.end() && p == state.getDescender().getClosePattern())))
+					longest = m;
+			}
+		}
+		catch (CheckingCharSequence.Abort e) {
+			throw new LexerAbortedException(e.reason, state.getHead(), state);
+		}
+		return longest;
+	}
+	
+	/**
+	 * The same as {@link #findLongestMatch(LexerState)}, but each {@link Pattern} is limited by the given
+	 * {@link MatchBudget}.
+	 */
+	private Matcher findLongest(LexerState<C, T, R, D, L> state, MatchBudget budget) throws LexerException {
+		Matcher longest = null;
+		CheckingCharSequence input = state.getCheckedInput();
+		Language<C, T, R, D, L> language = state.getLanguage();
+		try {
+			for (Pattern p : language.getPatterns().keySet()) {
+				Matcher m = p.matcher(input);
+				input.setBudget(budget.getLimit());
+				try {
+					if (!matchAt(m, state.getHead()))
+						continue;
+				}
+				catch (CheckingCharSequence.Abort e) {
+					if (e.reason != null)
+						throw e;
+					String name = language.getNames().get(p);
+					if (name == null)
+						name = p.pattern();
+					budget.record(name, p, state.getInput(), state.getHead());
+					if (budget.getPolicy() == MatchBudget.Policy.FAIL)
+						throw new MatchBudgetExceededException(name, p, state.getHead(), state);
 					continue;
-				if (match instanceof AscentBlock) {
-					if (longest.pattern() == state.getDescender().getClosePattern()) {
-						state.setHead(initial);
-						throw new EmptyInputException(state);
-					}
-					else
-						throw new UnrecognizedCharacterException(state);
 				}
-				@SuppressWarnings("unchecked")
-				C cell = match.perform((L) this, state, longest);
-				return cell;
+				if (longest == null || m.end() > longest.end() ||
+						(state.getDescender() != null && m.end() == longest.end() && p == state.getDescender().getClosePattern()))
+					longest = m;
 			}
-			C out = state.getRoot();
-			return out;
+		}
+		catch (CheckingCharSequence.Abort e) {
+			throw new LexerAbortedException(e.reason, state.getHead(), state);
 		}
 		finally {
-			if (!advance)
-				state.setHead(initial);
+			input.setBudget(Long.MAX_VALUE);
 		}
+		return longest;
+	}
+	
+	/**
+	 * Matches {@code m} against its input starting exactly at {@code head}. Unlike {@link Matcher#find(int)}, this never
+	 * scans past {@code head} looking for a later match, so the work done by a {@link Pattern} that does not match at
+	 * {@code head} does not grow with the length of the input. The rest of the input remains visible to lookaround
+	 * constructs, and {@code ^} does not match at {@code head} unless {@code head} is the start of the input.
+	 * 
+	 * @param m
+	 *            a {@link Matcher} whose region is the whole input
+	 * @param head
+	 *            the position at which the match must start
+	 * @return {@code true} if {@code m} matched at {@code head}
+	 */
+	static boolean matchAt(Matcher m, int head) {
+		return m.useTransparentBounds(true).useAnchoringBounds(false).region(head, m.regionEnd()).lookingAt();
 	}
 	
 	@Override
@@ -188,7 +934,7 @@ public class AbstractLexer<C extends GenericConsCell<C, T>, T extends ConsType,
 		for (Matcher m = null;;) { //Because head == longest if the loop wasn't broken, we don't need to assign longest to head here
 			for (Pattern p : ignores) {
 				m = p.matcher(state.getInput());
-				if (m.find(head) && m.start() == head && m.end() > longest)
+				if (matchAt(m, head) && m.end() > longest)
 					longest = m.end();
 			}
 			if (longest > head)
@@ -201,7 +947,8 @@ public class AbstractLexer<C extends GenericConsCell<C, T>, T extends ConsType,
 	
 	@Override
 	public final ConsCellConstructor<C, T> getConsCellConstructor() {
-		return cellConstructor;
+		ConsCellArena<C, T> active = arena.get();
+		return active != null ? active : cellConstructor;
 	}
 	
 	@Override
@@ -214,12 +961,43 @@ public class AbstractLexer<C extends GenericConsCell<C, T>, T extends ConsType,
 		return emptyType;
 	}
 	
+	@Override
+	public boolean isSlicingText() {
+		return slicingText;
+	}
+	
+	@Override
+	public void setSlicingText(boolean slicingText) {
+		this.slicingText = slicingText;
+	}
+	
+	@Override
+	public MatchBudget getMatchBudget() {
+		return matchBudget;
+	}
+	
+	@Override
+	public void setMatchBudget(MatchBudget matchBudget) {
+		this.matchBudget = matchBudget;
+	}
+	
+	@Override
+	public boolean isStacklessExceptions() {
+		return stacklessExceptions;
+	}
+	
+	@Override
+	public void setStacklessExceptions(boolean stacklessExceptions) {
+		this.stacklessExceptions = stacklessExceptions;
+	}
+	
 	@Override
 	public L clone() {
 		try {
 			@SuppressWarnings("unchecked")
 			L clone = (L) super.clone();
 			((AbstractLexer<C, T, R, D, L>) clone).language = clone.getLanguage().clone();
+			((AbstractLexer<C, T, R, D, L>) clone).arena = new ThreadLocal<>(); //Otherwise an arena run on this Lexer would also apply to the clone
 			return clone;
 		}
 		catch (CloneNotSupportedException e) {
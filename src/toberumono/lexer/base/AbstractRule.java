@@ -1,9 +1,11 @@
 package toberumono.lexer.base;
 
+import java.util.function.Function;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
 import toberumono.lexer.util.DefaultPattern;
+import toberumono.lexer.util.LexemeCache;
 import toberumono.structures.sexpressions.ConsCell;
 import toberumono.structures.sexpressions.ConsType;
 import toberumono.structures.sexpressions.GenericConsCell;
@@ -39,7 +41,54 @@ public class AbstractRule<C extends GenericConsCell<C, T>, T extends ConsType, R
 	 *            {@link AbstractRule rule}
 	 */
 	public AbstractRule(Pattern pattern, T type) {
-		this(pattern, (lexer, state, match) -> lexer.getConsCellConstructor().construct(match.group(), type, null, lexer.getEmptyType()));
+		this(pattern, (PureAction<C, T, R, D, L, MatchResult>) (lexer, state, match) -> lexer.getConsCellConstructor().construct(lexer.getText(state, match), type, null,
+				lexer.getEmptyType()));
+	}
+	
+	/**
+	 * Constructs a new {@link AbstractRule} with the given {@link Pattern} and {@link ConsType} whose {@code car} values are
+	 * produced by {@code converter} and shared through {@code cache}. The matched text is only extracted when it is not
+	 * already in {@code cache}.
+	 * 
+	 * @param <V>
+	 *            the type of the {@code car} values
+	 * @param pattern
+	 *            the {@link Pattern} that describes tokens that the {@link AbstractRule} can process
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} value of the {@link GenericConsCell ConsCells} matched by this
+	 *            {@link AbstractRule rule}
+	 * @param converter
+	 *            the function that converts the matched text into the {@code car} value
+	 * @param cache
+	 *            the {@link LexemeCache} in which to look up {@code car} values
+	 */
+	public <V> AbstractRule(Pattern pattern, T type, Function<? super String, ? extends V> converter, LexemeCache<V> cache) {
+		this(pattern, type, converter, cache, false);
+	}
+	
+	/**
+	 * Constructs a new {@link AbstractRule} with the given {@link Pattern} and {@link ConsType} whose {@code car} values are
+	 * produced by {@code converter} and shared through {@code cache}. The matched text is only extracted when it is not
+	 * already in {@code cache}.
+	 * 
+	 * @param <V>
+	 *            the type of the {@code car} values
+	 * @param pattern
+	 *            the {@link Pattern} that describes tokens that the {@link AbstractRule} can process
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} value of the {@link GenericConsCell ConsCells} matched by this
+	 *            {@link AbstractRule rule}
+	 * @param converter
+	 *            the function that converts the matched text into the {@code car} value
+	 * @param cache
+	 *            the {@link LexemeCache} in which to look up {@code car} values
+	 * @param pure
+	 *            if {@code true}, the {@link AbstractRule rule's} action is a {@link PureAction}. This must only be
+	 *            {@code true} if {@code converter} is free of side effects and safe to call concurrently
+	 */
+	public <V> AbstractRule(Pattern pattern, T type, Function<? super String, ? extends V> converter, LexemeCache<V> cache, boolean pure) {
+		this(pattern, PureAction.mark((lexer, state, match) -> lexer.getConsCellConstructor().construct(cache.get(state.getInput(), match, converter), type, null,
+				lexer.getEmptyType()), pure));
 	}
 	
 	/**
@@ -70,6 +119,28 @@ public class AbstractRule<C extends GenericConsCell<C, T>, T extends ConsType, R
 		this(pattern.getPattern(), type);
 	}
 	
+	/**
+	 * Constructs a new {@link AbstractRule} with the given {@link DefaultPattern} and {@link ConsType} whose {@code car}
+	 * values are produced by {@code converter} and shared through {@code cache}. The matched text is only extracted when it
+	 * is not already in {@code cache}.
+	 * 
+	 * @param <V>
+	 *            the type of the {@code car} values
+	 * @param pattern
+	 *            the {@link DefaultPattern} containing the regex {@link Pattern} that describes tokens that the
+	 *            {@link AbstractRule} can process
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} value of the {@link GenericConsCell ConsCells} matched by this
+	 *            {@link AbstractRule rule}
+	 * @param converter
+	 *            the function that converts the matched text into the {@code car} value
+	 * @param cache
+	 *            the {@link LexemeCache} in which to look up {@code car} values
+	 */
+	public <V> AbstractRule(DefaultPattern pattern, T type, Function<? super String, ? extends V> converter, LexemeCache<V> cache) {
+		this(pattern.getPattern(), type, converter, cache);
+	}
+	
 	/**
 	 * Constructs a new {@link AbstractRule} with the given {@link DefaultPattern} and {@link LexerAction}.
 	 * 
@@ -0,0 +1,179 @@
+package toberumono.lexer.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The result of a quick prepass over an input that pairs the open and close tokens of the {@link Descender Descenders} in a
+ * {@link Language} whose {@link Pattern Patterns} are {@link Pattern#LITERAL literal}.<br>
+ * The prepass does not tokenize the input. It only skips over the matches of a few opaque {@link Pattern Patterns} (the
+ * ignores of the {@link Language}, which normally include comments, and any given rules, such as strings) so that
+ * delimiters within them are not counted. Because of this, the pairs are only predictions: anything that uses them must
+ * check that the {@link Lexer} actually ends each descent where the {@link BracketIndex} says that it does.
+ * 
+ * @author Toberumono
+ */
+final class BracketIndex {
+	private final int[] opens, ends;
+	private final int size;
+	
+	private BracketIndex(int[] opens, int[] ends, int size) {
+		this.opens = opens;
+		this.ends = ends;
+		this.size = size;
+	}
+	
+	/**
+	 * @param start
+	 *            the index at which an open token starts
+	 * @return the index immediately after the matching close token or {@code -1} if the open token was not paired
+	 */
+	int getEnd(int start) {
+		int i = Arrays.binarySearch(opens, 0, size, start);
+		return i < 0 ? -1 : ends[i];
+	}
+	
+	/**
+	 * Scans {@code input} for the {@link Descender Descenders} in {@code language}.
+	 * 
+	 * @param language
+	 *            the {@link Language} whose {@link Descender Descenders} are paired
+	 * @param input
+	 *            the input to scan
+	 * @param opaqueRules
+	 *            the names of the rules in {@code language} whose matches can contain delimiters (such as strings)
+	 * @return the {@link BracketIndex}
+	 */
+	static BracketIndex build(Language<?, ?, ?, ?, ?> language, String input, Collection<String> opaqueRules) {
+		return scan(language, input, 0, opaqueRules, false);
+	}
+	
+	/**
+	 * Scans {@code input} from {@code start} only as far as the close token that matches the open token at {@code start}.
+	 * 
+	 * @param language
+	 *            the {@link Language} whose {@link Descender Descenders} are paired
+	 * @param input
+	 *            the input to scan
+	 * @param start
+	 *            the index at which the open token starts
+	 * @param opaqueRules
+	 *            the names of the rules in {@code language} whose matches can contain delimiters (such as strings)
+	 * @return the index immediately after the matching close token or {@code -1} if there is no literal open token at
+	 *         {@code start} or it is not closed
+	 */
+	static int findEnd(Language<?, ?, ?, ?, ?> language, String input, int start, Collection<String> opaqueRules) {
+		return scan(language, input, start, opaqueRules, true).getEnd(start);
+	}
+	
+	/**
+	 * Scans {@code input} from {@code from} for only the open and close {@link Pattern Patterns} of {@code descender},
+	 * counting nested pairs, until the close token that balances an open token that ends at {@code from}. Ties between the
+	 * two {@link Pattern Patterns} go to the close {@link Pattern}, as they do in the {@link Lexer}.
+	 * 
+	 * @param descender
+	 *            the {@link Descender} whose open token ends at {@code from}
+	 * @param input
+	 *            the input to scan
+	 * @param from
+	 *            the index immediately after the open token
+	 * @return the match of the balancing close token or {@code null} if the descent is not closed
+	 */
+	static MatchResult findClose(Descender<?, ?, ?, ?, ?> descender, String input, int from) {
+		Matcher open = descender.getOpenPattern().matcher(input), close = descender.getClosePattern().matcher(input);
+		//The pending matches are only searched for again once the scan passes their starts, so each Matcher reads the input about once
+		int openStart = -1, closeStart = -1; //Integer.MAX_VALUE if there are no more matches
+		for (int depth = 1, i = from, lim = input.length(); i <= lim;) {
+			if (closeStart < i)
+				closeStart = close.find(i) ? close.start() : Integer.MAX_VALUE;
+			if (closeStart == Integer.MAX_VALUE)
+				return null;
+			if (openStart < i)
+				openStart = open.find(i) ? open.start() : Integer.MAX_VALUE;
+			if (openStart < closeStart) {
+				depth++;
+				i = Math.max(open.end(), openStart + 1);
+			}
+			else if (--depth == 0)
+				return close.toMatchResult();
+			else
+				i = Math.max(close.end(), closeStart + 1);
+		}
+		return null;
+	}
+	
+	private static BracketIndex scan(Language<?, ?, ?, ?, ?> language, String input, int from, Collection<String> opaqueRules, boolean single) {
+		List<String> delimiters = new ArrayList<>();
+		List<Boolean> isOpen = new ArrayList<>();
+		List<Integer> kinds = new ArrayList<>();
+		int kind = 0;
+		for (Descender<?, ?, ?, ?, ?> descender : language.getDescenders().values()) {
+			Pattern open = descender.getOpenPattern(), close = descender.getClosePattern();
+			if ((open.flags() & Pattern.LITERAL) == 0 || (close.flags() & Pattern.LITERAL) == 0 || open.pattern().isEmpty() || close.pattern().isEmpty())
+				continue;
+			delimiters.add(open.pattern());
+			isOpen.add(true);
+			kinds.add(kind);
+			if (!close.pattern().equals(open.pattern())) { //Otherwise, the open token is interpreted by context
+				delimiters.add(close.pattern());
+				isOpen.add(false);
+				kinds.add(kind);
+			}
+			kind++;
+		}
+		List<Matcher> opaque = new ArrayList<>();
+		for (Pattern p : language.getIgnores().values())
+			opaque.add(p.matcher(input));
+		for (String name : opaqueRules) {
+			Rule<?, ?, ?, ?, ?> rule = language.getRule(name);
+			if (rule != null)
+				opaque.add(rule.getPattern().matcher(input));
+		}
+		for (Matcher m : opaque)
+			m.useTransparentBounds(true).useAnchoringBounds(false);
+		
+		int[] opens = new int[16], ends = new int[16], stack = new int[16], stackKinds = new int[16];
+		int size = 0, depth = 0;
+		scan: for (int i = from, lim = input.length(); i < lim && !(single && depth == 0 && i > from);) {
+			for (Matcher m : opaque) {
+				if (m.region(i, lim).lookingAt() && m.end() > i) {
+					i = m.end();
+					continue scan;
+				}
+			}
+			int longest = -1;
+			for (int d = 0; d < delimiters.size(); d++)
+				if (input.startsWith(delimiters.get(d), i) && (longest == -1 || delimiters.get(d).length() > delimiters.get(longest).length()))
+					longest = d;
+			if (longest == -1) {
+				i++;
+				continue;
+			}
+			int k = kinds.get(longest), next = i + delimiters.get(longest).length();
+			boolean closes = depth > 0 && stackKinds[depth - 1] == k;
+			if (isOpen.get(longest) && !(closes && (longest + 1 == delimiters.size() || kinds.get(longest + 1) != k))) { //Open tokens only close descenders with identical delimiters
+				if (depth == stack.length) {
+					stack = Arrays.copyOf(stack, depth * 2);
+					stackKinds = Arrays.copyOf(stackKinds, depth * 2);
+				}
+				if (size == opens.length) {
+					opens = Arrays.copyOf(opens, size * 2);
+					ends = Arrays.copyOf(ends, size * 2);
+				}
+				opens[size] = i;
+				ends[size] = -1;
+				stack[depth] = size++;
+				stackKinds[depth++] = k;
+			}
+			else if (closes)
+				ends[stack[--depth]] = next;
+			i = next;
+		}
+		return new BracketIndex(opens, ends, size);
+	}
+}
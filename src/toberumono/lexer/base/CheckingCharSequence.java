@@ -0,0 +1,81 @@
+package toberumono.lexer.base;
+
+import toberumono.lexer.errors.LexerAbortedException.Reason;
+
+/**
+ * A view of the input that is handed to {@link java.util.regex.Matcher Matchers} so that a {@link LexerDeadline} and a
+ * {@link MatchBudget} can be checked while a single (possibly very slow) match is in progress.<br>
+ * Every {@value #CHECK_INTERVAL} calls to {@link #charAt(int)}, the {@link LexerDeadline} (if any) is polled, and an
+ * {@link Abort} is thrown if the run should stop. An {@link Abort} is also thrown once more than the number of reads allowed
+ * by {@link #setBudget(long)} have been made.
+ * 
+ * @author Toberumono
+ */
+final class CheckingCharSequence implements CharSequence {
+	static final int CHECK_INTERVAL = 1024;
+	
+	private final String input;
+	private final LexerDeadline deadline;
+	private int countdown;
+	private long remaining;
+	
+	/**
+	 * Thrown from within a {@link java.util.regex.Matcher} when a {@link LexerDeadline} requires the run to stop or when the
+	 * budget set by {@link CheckingCharSequence#setBudget(long)} runs out. This is converted into a
+	 * {@link toberumono.lexer.errors.LexerAbortedException LexerAbortedException} (or handled according to the
+	 * {@link MatchBudget.Policy}) by the {@link Lexer}.
+	 */
+	static final class Abort extends RuntimeException {
+		final Reason reason; //This is null if the budget ran out
+		
+		Abort(Reason reason) {
+			super(null, null, false, false); //This is only used for control flow, so it does not need a stack trace
+			this.reason = reason;
+		}
+	}
+	
+	CheckingCharSequence(String input, LexerDeadline deadline) {
+		this.input = input;
+		this.deadline = deadline;
+		countdown = CHECK_INTERVAL;
+		remaining = Long.MAX_VALUE;
+	}
+	
+	/**
+	 * Limits the number of calls to {@link #charAt(int)} that can be made before an {@link Abort} is thrown.
+	 * 
+	 * @param budget
+	 *            the number of calls that can be made or {@link Long#MAX_VALUE} to remove the limit
+	 */
+	void setBudget(long budget) {
+		remaining = budget;
+	}
+	
+	@Override
+	public int length() {
+		return input.length();
+	}
+	
+	@Override
+	public char charAt(int index) {
+		if (--remaining < 0)
+			throw new Abort(null);
+		if (deadline != null && --countdown <= 0) {
+			countdown = CHECK_INTERVAL;
+			Reason reason = deadline.poll();
+			if (reason != null)
+				throw new Abort(reason);
+		}
+		return input.charAt(index);
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return input.subSequence(start, end);
+	}
+	
+	@Override
+	public String toString() {
+		return input;
+	}
+}
@@ -0,0 +1,140 @@
+package toberumono.lexer.base;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsCellConstructor;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * A {@link ConsCellConstructor} that hands out {@link GenericConsCell ConsCells} from a reusable slab.<br>
+ * Every cell that the {@link ConsCellArena} allocates is retained (up to a configurable limit). Once the caller has finished
+ * with everything produced since the last {@link #release()}, calling {@link #release()} makes all of the retained cells
+ * available again, and later calls to {@link #construct(Object, ConsType, Object, ConsType)} re-initialize them with the
+ * {@link Recycler} instead of allocating new ones. This keeps the allocation rate of long-running services that lex many
+ * short-lived documents low.<br>
+ * <b>Note:</b> a {@link ConsCellArena} is not thread-safe, and any cells produced before a call to {@link #release()} must
+ * not be used after it.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @see Lexer#lexWithArena(String, ConsCellArena)
+ */
+public class ConsCellArena<C extends GenericConsCell<C, T>, T extends ConsType> implements ConsCellConstructor<C, T> {
+	private final ConsCellConstructor<C, T> allocator;
+	private final Recycler<C, T> recycler;
+	private final List<C> slab;
+	private final int maxRetained;
+	private int used;
+	
+	/**
+	 * Re-initializes a retained {@link GenericConsCell ConsCell} so that it is indistinguishable from one that was just
+	 * constructed with the given values.
+	 * 
+	 * @author Toberumono
+	 * @param <C>
+	 *            the implementation of {@link ConsCell} to be used
+	 * @param <T>
+	 *            the implementation of {@link ConsType} to be used
+	 */
+	@FunctionalInterface
+	public static interface Recycler<C extends GenericConsCell<C, T>, T extends ConsType> {
+		
+		/**
+		 * Re-initializes {@code cell}. This must replace all of its values, including its links to other cells.
+		 * 
+		 * @param cell
+		 *            the cell to re-initialize
+		 * @param car
+		 *            the new {@code car} value
+		 * @param carType
+		 *            the new {@code car} type
+		 * @param cdr
+		 *            the new {@code cdr} value
+		 * @param cdrType
+		 *            the new {@code cdr} type
+		 * @return the re-initialized cell
+		 */
+		public C recycle(C cell, Object car, T carType, Object cdr, T cdrType);
+	}
+	
+	/**
+	 * Constructs a {@link ConsCellArena} that retains an unlimited number of cells.
+	 * 
+	 * @param allocator
+	 *            the {@link ConsCellConstructor} used to allocate new cells
+	 * @param recycler
+	 *            the {@link Recycler} used to re-initialize retained cells
+	 */
+	public ConsCellArena(ConsCellConstructor<C, T> allocator, Recycler<C, T> recycler) {
+		this(allocator, recycler, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Constructs a {@link ConsCellArena} that retains up to {@code maxRetained} cells. Cells allocated once that many are
+	 * retained are left to the garbage collector.
+	 * 
+	 * @param allocator
+	 *            the {@link ConsCellConstructor} used to allocate new cells
+	 * @param recycler
+	 *            the {@link Recycler} used to re-initialize retained cells
+	 * @param maxRetained
+	 *            the maximum number of cells to retain
+	 */
+	public ConsCellArena(ConsCellConstructor<C, T> allocator, Recycler<C, T> recycler, int maxRetained) {
+		if (maxRetained < 0)
+			throw new IllegalArgumentException("The maximum number of retained cells cannot be negative.");
+		this.allocator = allocator;
+		this.recycler = recycler;
+		this.maxRetained = maxRetained;
+		slab = new ArrayList<>();
+		used = 0;
+	}
+	
+	@Override
+	public C construct(Object car, T carType, Object cdr, T cdrType) {
+		if (used < slab.size())
+			return recycler.recycle(slab.get(used++), car, carType, cdr, cdrType);
+		C cell = allocator.construct(car, carType, cdr, cdrType);
+		if (slab.size() < maxRetained) {
+			slab.add(cell);
+			used++;
+		}
+		return cell;
+	}
+	
+	/**
+	 * Makes every retained cell available for reuse. All cells produced by the {@link ConsCellArena} since the last call to
+	 * this method become invalid.
+	 */
+	public void release() {
+		used = 0;
+	}
+	
+	/**
+	 * Releases and drops all of the retained cells so that they can be garbage collected.
+	 */
+	public void clear() {
+		slab.clear();
+		used = 0;
+	}
+	
+	/**
+	 * @return the number of retained cells that have been handed out since the last call to {@link #release()}
+	 */
+	public int getUsed() {
+		return used;
+	}
+	
+	/**
+	 * @return the number of cells that the {@link ConsCellArena} currently retains
+	 */
+	public int getRetained() {
+		return slab.size();
+	}
+}
@@ -0,0 +1,36 @@
+package toberumono.lexer.base;
+
+import java.util.regex.MatchResult;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * The counterpart of {@link AscentBlock}. This is used internally by {@link AbstractLanguage} and {@link AbstractLexer} to
+ * mark the action of the open {@link java.util.regex.Pattern Pattern} of a {@link Descender}, which increases the depth of
+ * the following tokens by 1.<br>
+ * {@link AbstractLexer} handles these itself so that it does not need to recurse for every level of nesting, but
+ * {@link #perform(Lexer, LexerState, Object) performing} one lexes the entire descent (by calling
+ * {@link Lexer#lex(LexerState)}) and returns its result.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ */
+public interface DescentBlock<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>>
+		extends LexerAction<C, T, R, D, L, MatchResult> {
+	
+	/**
+	 * @return the {@link Descender} whose open {@link java.util.regex.Pattern Pattern} this action belongs to
+	 */
+	public D getDescender();
+}
@@ -0,0 +1,27 @@
+package toberumono.lexer.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import toberumono.structures.sexpressions.ConsType;
+
+/**
+ * The settings and collected {@link LexerDiagnostic LexerDiagnostics} of a run in recovery mode. This is shared by all of
+ * the {@link LexerState LexerStates} in the run.
+ * 
+ * @author Toberumono
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ */
+final class ErrorRecovery<T extends ConsType> {
+	final T errorType;
+	final Pattern sync;
+	final List<LexerDiagnostic> diagnostics;
+	
+	ErrorRecovery(T errorType, Pattern sync) {
+		this.errorType = errorType;
+		this.sync = sync;
+		diagnostics = new ArrayList<>();
+	}
+}
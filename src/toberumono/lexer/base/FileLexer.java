@@ -0,0 +1,250 @@
+package toberumono.lexer.base;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import toberumono.lexer.errors.LexerException;
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * Lexes every file in a file tree that matches a {@link PathMatcher}.<br>
+ * Files are read asynchronously and decoded as soon as their reads complete. Decoded files are then lexed on a
+ * work-stealing {@link ForkJoinPool}, with the largest decoded file always being lexed first. Every worker thread shares
+ * the given {@link Lexer}.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ */
+public class FileLexer<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> {
+	private final ForkJoinPool pool;
+	private final Charset charset;
+	private final int readAhead;
+	private final L lexer;
+	
+	/**
+	 * Constructs a {@link FileLexer} that decodes files as UTF-8, lexes them on the {@link ForkJoinPool#commonPool() common
+	 * pool}, and reads ahead by up to twice the number of available processors.
+	 * 
+	 * @param lexer
+	 *            the {@link Lexer} that defines the grammar
+	 */
+	public FileLexer(L lexer) {
+		this(lexer, ForkJoinPool.commonPool(), StandardCharsets.UTF_8, Runtime.getRuntime().availableProcessors() * 2);
+	}
+	
+	/**
+	 * Constructs a {@link FileLexer} with the given {@link ForkJoinPool}, {@link Charset}, and read-ahead limit.
+	 * 
+	 * @param lexer
+	 *            the {@link Lexer} that defines the grammar
+	 * @param pool
+	 *            the {@link ForkJoinPool} on which files are lexed
+	 * @param charset
+	 *            the {@link Charset} with which to decode the files
+	 * @param readAhead
+	 *            the maximum number of files that can be read or decoded but not yet lexed at any one time
+	 */
+	public FileLexer(L lexer, ForkJoinPool pool, Charset charset, int readAhead) {
+		this.lexer = Objects.requireNonNull(lexer, "The lexer cannot be null.");
+		this.pool = Objects.requireNonNull(pool, "The pool cannot be null.");
+		this.charset = Objects.requireNonNull(charset, "The charset cannot be null.");
+		if (readAhead < 1)
+			throw new IllegalArgumentException("The read-ahead limit must be at least 1.");
+		this.readAhead = readAhead;
+	}
+	
+	/**
+	 * Lexes every regular file under {@code root} that is matched by {@code matcher}.<br>
+	 * This method blocks until every matched file has been handed to either {@code onResult} or {@code onError}. Both
+	 * callbacks can be called from multiple threads concurrently.
+	 * 
+	 * @param root
+	 *            the root of the file tree to lex
+	 * @param matcher
+	 *            the {@link PathMatcher} that selects the files to lex. It is given the {@link Path Paths} as they are found
+	 *            while walking from {@code root}
+	 * @param onResult
+	 *            called with each file and the tokens in it
+	 * @param onError
+	 *            called with each file that could not be read, decoded, or lexed and the reason why. This includes any
+	 *            {@link Throwable} that was thrown while lexing the file, not just {@link LexerException
+	 *            LexerExceptions}
+	 * @return the number of files that were successfully lexed
+	 * @throws IOException
+	 *             if the file tree could not be walked
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting for the files to be lexed
+	 */
+	public int lexFiles(Path root, PathMatcher matcher, BiConsumer<Path, C> onResult, BiConsumer<Path, Throwable> onError) throws IOException, InterruptedException {
+		List<Document> files = new ArrayList<>();
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile() && matcher.matches(file))
+					files.add(new Document(file, attrs.size()));
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		files.sort(null); //Largest first so that the biggest reads are issued as early as possible
+		
+		PriorityQueue<Document> decoded = new PriorityQueue<>(Math.max(files.size(), 1)); //Guarded by its own lock
+		Semaphore window = new Semaphore(readAhead);
+		CountDownLatch done = new CountDownLatch(files.size());
+		AtomicInteger lexed = new AtomicInteger(0);
+		BiConsumer<Path, Throwable> fail = (path, e) -> {
+			try {
+				onError.accept(path, e);
+			}
+			finally {
+				window.release();
+				done.countDown();
+			}
+		};
+		Runnable worker = () -> {
+			Document doc;
+			synchronized (decoded) {
+				doc = decoded.poll(); //There is exactly one task per decoded document, so this is never null
+			}
+			String text = doc.text;
+			doc.text = null; //Otherwise, files would keep every decoded text until lexFiles returns
+			C result;
+			try {
+				result = lexer.lex(text);
+			}
+			catch (Throwable e) { //Actions can throw anything, and an uncaught Throwable would leave done waiting forever
+				fail.accept(doc.path, e);
+				return;
+			}
+			try {
+				lexed.incrementAndGet();
+				onResult.accept(doc.path, result);
+			}
+			finally {
+				window.release();
+				done.countDown();
+			}
+		};
+		for (Document file : files) {
+			window.acquire();
+			read(file, doc -> {
+				RejectedExecutionException rejected;
+				synchronized (decoded) { //This keeps workers from taking doc before it can be withdrawn
+					decoded.add(doc);
+					try {
+						pool.execute(worker);
+						return;
+					}
+					catch (RejectedExecutionException e) { //Otherwise, done would be left waiting forever
+						decoded.remove(doc);
+						rejected = e;
+					}
+				}
+				doc.text = null;
+				fail.accept(doc.path, rejected);
+			}, e -> fail.accept(file.path, e));
+		}
+		done.await();
+		return lexed.get();
+	}
+	
+	private void read(Document file, Consumer<Document> onDecoded, Consumer<Throwable> onFailed) {
+		if (file.size > Integer.MAX_VALUE) {
+			onFailed.accept(new IOException(file.path + " is too large to be lexed."));
+			return;
+		}
+		AsynchronousFileChannel channel;
+		try {
+			channel = AsynchronousFileChannel.open(file.path, StandardOpenOption.READ);
+		}
+		catch (IOException | RuntimeException e) {
+			onFailed.accept(e);
+			return;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) file.size);
+		channel.read(buffer, 0, buffer, new CompletionHandler<Integer, ByteBuffer>() {
+			private long position = 0;
+			
+			@Override
+			public void completed(Integer count, ByteBuffer buf) {
+				if (count > 0 && buf.hasRemaining()) { //Reads can complete partially, so keep going until the file is exhausted
+					position += count;
+					channel.read(buf, position, buf, this);
+					return;
+				}
+				try {
+					channel.close();
+					buf.flip();
+					CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+					file.text = decoder.decode(buf).toString();
+				}
+				catch (IOException | RuntimeException e) {
+					onFailed.accept(e);
+					return;
+				}
+				onDecoded.accept(file);
+			}
+			
+			@Override
+			public void failed(Throwable exc, ByteBuffer buf) {
+				try {
+					channel.close();
+				}
+				catch (IOException e) {
+					exc.addSuppressed(e);
+				}
+				onFailed.accept(exc);
+			}
+		});
+	}
+	
+	private static class Document implements Comparable<Document> {
+		final Path path;
+		final long size;
+		String text;
+		
+		Document(Path path, long size) {
+			this.path = path;
+			this.size = size;
+		}
+		
+		@Override
+		public int compareTo(Document o) {
+			return Long.compare(o.size, size);
+		}
+	}
+}
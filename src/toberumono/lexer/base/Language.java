@@ -75,6 +75,47 @@ public interface Language<C extends GenericConsCell<C, T>, T extends ConsType, R
 	 */
 	public void addDescender(String name, D descender);
 	
+	/**
+	 * Adds a new {@link Descender} whose descents are lexed lazily. When the open token is found, a literal-aware bracket
+	 * scan (which skips the ignores and the matches of the given rules) finds the matching close token, and the
+	 * {@link Lexer} emits a single cell whose car is a {@link LazyDescent} and continues after the close token. The descent
+	 * is lexed the first time that {@link LazyDescent#get()} is called.<br>
+	 * The open action is run immediately. If it changes the {@link Language}, or the {@link Descender Descender's}
+	 * {@link Pattern Patterns} are not {@link Pattern#LITERAL literal}, or the close token cannot be found, the descent is lexed
+	 * immediately as it would be for {@link #addDescender(String, Descender)}.
+	 * 
+	 * @param name
+	 *            the name of the {@link Descender}
+	 * @param descender
+	 *            the {@link Descender}
+	 * @param lazyType
+	 *            the type of the cells whose cars are {@link LazyDescent LazyDescents}
+	 * @param opaqueRules
+	 *            the names of the rules whose matches can contain delimiters (such as strings)
+	 * @throws PatternCollisionException
+	 *             if a {@link Pattern} being added is already loaded
+	 */
+	public void addLazyDescender(String name, D descender, T lazyType, String... opaqueRules);
+	
+	/**
+	 * Adds a new {@link Descender} whose descents are skipped without being tokenized. When the open token is found, the
+	 * {@link Lexer} scans only for the {@link Descender Descender's} open and close {@link Pattern Patterns} (counting nested
+	 * pairs) and continues after the balanced close token. Neither the open nor the close action is run.<br>
+	 * If the close token cannot be found, the rest of the input is skipped (and, in recovery mode, a
+	 * {@link LexerDiagnostic.Kind#UNCLOSED_DESCENDER UNCLOSED_DESCENDER} diagnostic is recorded).
+	 * 
+	 * @param name
+	 *            the name of the {@link Descender}
+	 * @param descender
+	 *            the {@link Descender}
+	 * @param spanType
+	 *            the type of the token whose car is the skipped input between the open and close tokens or {@code null} if
+	 *            no token should be produced
+	 * @throws PatternCollisionException
+	 *             if a {@link Pattern} being added is already loaded
+	 */
+	public void addSkippedDescender(String name, D descender, T spanType);
+	
 	/**
 	 * Removes a {@link Descender}
 	 * 
@@ -167,6 +208,18 @@ public interface Language<C extends GenericConsCell<C, T>, T extends ConsType, R
 	 */
 	public Map<Pattern, LexerAction<C, T, R, D, L, MatchResult>> getPatterns();
 	
+	/**
+	 * Gets an immutable view of the current contents of the {@link Language}. Every {@link LexerState} binds to the snapshot
+	 * of each {@link Language} that it uses, so changes made while a run is in progress do not affect that run.<br>
+	 * The default implementation returns the {@link Language} itself, which is only safe if the {@link Language} is never
+	 * modified while it is in use.
+	 * 
+	 * @return an immutable view of the current contents of the {@link Language}
+	 */
+	public default Language<C, T, R, D, L> snapshot() {
+		return this;
+	}
+	
 	/**
 	 * @return a clone of the {@link Language} that is in keeping with the conventions specified by {@link Cloneable}
 	 */
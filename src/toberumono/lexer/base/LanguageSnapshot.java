@@ -0,0 +1,141 @@
+package toberumono.lexer.base;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * An immutable copy of the contents of a {@link Language} at a single point in time.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ * @see Language#snapshot()
+ */
+final class LanguageSnapshot<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>>
+		implements Language<C, T, R, D, L> {
+	private final Map<String, R> rules;
+	private final Map<String, D> descenders;
+	private final Map<String, Pattern> ignores;
+	private final Map<Pattern, String> names;
+	private final Map<Pattern, LexerAction<C, T, R, D, L, MatchResult>> patterns;
+	
+	/**
+	 * Constructs a {@link LanguageSnapshot} that wraps the given {@link Map Maps}. They are <i>not</i> copied, so they must
+	 * not be modified afterwards.
+	 */
+	LanguageSnapshot(Map<String, R> rules, Map<String, D> descenders, Map<String, Pattern> ignores, Map<Pattern, String> names,
+			Map<Pattern, LexerAction<C, T, R, D, L, MatchResult>> patterns) {
+		this.rules = Collections.unmodifiableMap(rules);
+		this.descenders = Collections.unmodifiableMap(descenders);
+		this.ignores = Collections.unmodifiableMap(ignores);
+		this.names = Collections.unmodifiableMap(names);
+		this.patterns = Collections.unmodifiableMap(patterns);
+	}
+	
+	@Override
+	public void addRule(String name, R rule) {
+		throw new UnsupportedOperationException("A Language snapshot cannot be modified.");
+	}
+	
+	@Override
+	public R removeRule(String name) {
+		throw new UnsupportedOperationException("A Language snapshot cannot be modified.");
+	}
+	
+	@Override
+	public R getRule(String name) {
+		return rules.get(name);
+	}
+	
+	@Override
+	public Map<String, R> getRules() {
+		return rules;
+	}
+	
+	@Override
+	public void addDescender(String name, D descender) {
+		throw new UnsupportedOperationException("A Language snapshot cannot be modified.");
+	}
+	
+	@Override
+	public void addLazyDescender(String name, D descender, T lazyType, String... opaqueRules) {
+		throw new UnsupportedOperationException("A Language snapshot cannot be modified.");
+	}
+	
+	@Override
+	public void addSkippedDescender(String name, D descender, T spanType) {
+		throw new UnsupportedOperationException("A Language snapshot cannot be modified.");
+	}
+	
+	@Override
+	public D removeDescender(String name) {
+		throw new UnsupportedOperationException("A Language snapshot cannot be modified.");
+	}
+	
+	@Override
+	public D getDescender(String name) {
+		return descenders.get(name);
+	}
+	
+	@Override
+	public Map<String, D> getDescenders() {
+		return descenders;
+	}
+	
+	@Override
+	public void addIgnore(String name, Pattern pattern) {
+		throw new UnsupportedOperationException("A Language snapshot cannot be modified.");
+	}
+	
+	@Override
+	public Pattern removeIgnore(String name) {
+		throw new UnsupportedOperationException("A Language snapshot cannot be modified.");
+	}
+	
+	@Override
+	public Pattern getIgnore(String name) {
+		return ignores.get(name);
+	}
+	
+	@Override
+	public Map<String, Pattern> getIgnores() {
+		return ignores;
+	}
+	
+	@Override
+	public Map<Pattern, String> getNames() {
+		return names;
+	}
+	
+	@Override
+	public Map<Pattern, LexerAction<C, T, R, D, L, MatchResult>> getPatterns() {
+		return patterns;
+	}
+	
+	@Override
+	public Language<C, T, R, D, L> snapshot() {
+		return this;
+	}
+	
+	/**
+	 * Because a {@link LanguageSnapshot} is immutable, this just returns the {@link LanguageSnapshot}.
+	 */
+	@Override
+	public Language<C, T, R, D, L> clone() {
+		return this;
+	}
+}
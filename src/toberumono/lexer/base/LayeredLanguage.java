@@ -0,0 +1,100 @@
+package toberumono.lexer.base;
+
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * A {@link Language} that overlays a small set of changes on a shared, immutable base {@link Language}. Only the
+ * {@link Rule Rules}, {@link Descender Descenders}, and ignores that are added to or removed from the
+ * {@link LayeredLanguage} are stored in it; everything else, including the base's compiled {@link Pattern Patterns} and
+ * their actions, is read through to the {@link Language#snapshot() snapshot} of the base {@link Language} that was taken
+ * when the {@link LayeredLanguage} was constructed.<br>
+ * To shadow an entry in the base {@link Language}, remove it and then add the replacement under the same name. The
+ * replacement keeps the shadowed entry's position in {@link #getRules()}, {@link #getDescenders()}, and
+ * {@link #getIgnores()} (which are keyed by name). However, {@link #getPatterns()} and {@link #getNames()} are keyed by
+ * {@link Pattern}, so unless the replacement reuses the shadowed entry's {@link Pattern} object, its {@link Pattern} is
+ * iterated over after all of the base's {@link Pattern Patterns}, like the {@link Pattern Patterns} of new entries. Because
+ * ties between equally long matches go to the {@link Pattern} that comes first, such a replacement loses ties that the
+ * shadowed entry would have won.<br>
+ * Both {@link #snapshot()} and {@link #clone()} take time proportional to the number of changes rather than to the size of
+ * the base {@link Language}, so many {@link LayeredLanguage LayeredLanguages} (such as per-tenant dialects) can share a
+ * single base {@link Language}. Snapshots separate the changes that shadow the base's entries from those that add new
+ * ones, so iterating over a snapshot's {@link Pattern Patterns} while lexing only checks whether each of the base's
+ * {@link Pattern Patterns} has been removed (and skips even that if none have been). Use
+ * {@link Lexer#lex(String, Language)} to lex with one.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ */
+public class LayeredLanguage<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>>
+		extends AbstractLanguage<C, T, R, D, L> {
+	private final Language<C, T, R, D, L> base;
+	
+	/**
+	 * Constructs a {@link LayeredLanguage} with no changes from {@code base}. Later changes to {@code base} do not affect the
+	 * {@link LayeredLanguage}.
+	 * 
+	 * @param base
+	 *            the {@link Language} whose {@link Language#snapshot() snapshot} is to be used as the base
+	 */
+	public LayeredLanguage(Language<C, T, R, D, L> base) {
+		this(base.snapshot(), null);
+	}
+	
+	/**
+	 * @param base
+	 *            the snapshot of the base {@link Language}
+	 * @param unused
+	 *            distinguishes this constructor from {@link #LayeredLanguage(Language)}
+	 */
+	private LayeredLanguage(Language<C, T, R, D, L> base, Void unused) {
+		super(new OverlayMap<>(base.getRules()), new OverlayMap<>(base.getDescenders()), new OverlayMap<>(base.getIgnores()), new OverlayMap<>(base.getNames()),
+				new OverlayMap<>(base.getPatterns()), (m, e) -> ((OverlayMap<?, ?>) m).clone());
+		this.base = base;
+	}
+	
+	/**
+	 * @return the immutable {@link Language} on which the changes in this {@link LayeredLanguage} are overlaid
+	 */
+	public Language<C, T, R, D, L> getBase() {
+		return base;
+	}
+	
+	/**
+	 * The snapshot holds frozen copies of the changes and reads through to the base {@link Language Language's} snapshot.
+	 */
+	@Override
+	Language<C, T, R, D, L> createSnapshot() {
+		if (!(getRules() instanceof OverlayMap && getDescenders() instanceof OverlayMap && getIgnores() instanceof OverlayMap && getNames() instanceof OverlayMap
+				&& getPatterns() instanceof OverlayMap)) //clone(BiFunction) can replace the OverlayMaps
+			return super.createSnapshot();
+		return new LanguageSnapshot<>(((OverlayMap<String, R>) getRules()).freeze(), ((OverlayMap<String, D>) getDescenders()).freeze(),
+				((OverlayMap<String, Pattern>) getIgnores()).freeze(), ((OverlayMap<Pattern, String>) getNames()).freeze(),
+				((OverlayMap<Pattern, LexerAction<C, T, R, D, L, MatchResult>>) getPatterns()).freeze());
+	}
+	
+	@Override
+	public LayeredLanguage<C, T, R, D, L> clone() {
+		return (LayeredLanguage<C, T, R, D, L>) super.clone();
+	}
+	
+	@Override
+	public LayeredLanguage<C, T, R, D, L> clone(BiFunction<Map<?, ?>, String, Map<?, ?>> cloner) {
+		return (LayeredLanguage<C, T, R, D, L>) super.clone(cloner);
+	}
+}
@@ -0,0 +1,112 @@
+package toberumono.lexer.base;
+
+import toberumono.lexer.errors.LexerException;
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * The car of the cell that a lazy {@link Descender} produces in place of its descent. The descent is only lexed the first
+ * time that {@link #get()} is called, and the result is cached.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ * @see Language#addLazyDescender(String, Descender, ConsType, String...)
+ */
+public final class LazyDescent<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> {
+	private final int start, end;
+	private LexerState<C, T, R, D, L> state;
+	private C result;
+	private RuntimeException failure;
+	
+	/**
+	 * Constructs a {@link LazyDescent}.
+	 * 
+	 * @param state
+	 *            a {@link LexerState} that was {@link LexerState#fork(Descender) forked} immediately after the open action
+	 * @param end
+	 *            the index immediately after the predicted close token
+	 */
+	LazyDescent(LexerState<C, T, R, D, L> state, int end) {
+		this.state = state.setDeadline(null); //The deadline of the enclosing run does not apply to later accesses
+		this.start = state.getHead();
+		this.end = end;
+	}
+	
+	/**
+	 * Lexes the descent if it has not already been lexed.
+	 * 
+	 * @return the cell that the {@link Descender Descender's} close action produced for the descent
+	 * @throws LexerException
+	 *             if the descent could not be lexed or did not end where the bracket scan predicted. The same
+	 *             {@link LexerException} is thrown by every subsequent call
+	 */
+	public synchronized C get() throws LexerException {
+		if (failure != null)
+			throw failure;
+		if (state == null)
+			return result;
+		try {
+			C out = state.getLexer().lex(state);
+			if (state.getHead() != end)
+				throw new LexerException("The lazy descent ended at " + state.getHead() + " instead of " + end + ".", state);
+			result = out;
+			return result;
+		}
+		catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		}
+		finally {
+			state = null;
+		}
+	}
+	
+	/**
+	 * @return {@code true} if {@link #get()} has already been called
+	 */
+	public synchronized boolean isForced() {
+		return state == null;
+	}
+	
+	/**
+	 * @return the index at which the content of the descent starts (inclusive)
+	 */
+	public int getStart() {
+		return start;
+	}
+	
+	/**
+	 * @return the index immediately after the close token of the descent
+	 */
+	public int getEnd() {
+		return end;
+	}
+	
+	/**
+	 * A convenience method for consumers that do not know whether a car came from a lazy {@link Descender}.
+	 * 
+	 * @param car
+	 *            the car of a cell
+	 * @return the result of {@link #get()} if {@code car} is a {@link LazyDescent}, otherwise {@code car}
+	 * @throws LexerException
+	 *             if {@code car} is a {@link LazyDescent} whose descent could not be lexed
+	 */
+	public static Object force(Object car) throws LexerException {
+		return car instanceof LazyDescent ? ((LazyDescent<?, ?, ?, ?, ?>) car).get() : car;
+	}
+	
+	@Override
+	public String toString() {
+		return "LazyDescent[" + start + ", " + end + ")";
+	}
+}
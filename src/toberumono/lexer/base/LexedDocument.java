@@ -0,0 +1,244 @@
+package toberumono.lexer.base;
+
+import java.util.Arrays;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * The result of lexing an input with {@link Lexer#lexDocument(String)}. In addition to the tokens, this records where each
+ * top-level token starts and ends so that the input can be re-lexed incrementally via
+ * {@link Lexer#relex(LexedDocument, int, int, String)}.<br>
+ * <b>Note:</b> re-lexing moves the {@link ConsCell ConsCells} and the recorded positions before and after the edit into the
+ * new {@link LexedDocument} rather than copying them, so a {@link LexedDocument} must not be used once it has been passed
+ * to {@link Lexer#relex(LexedDocument, int, int, String) relex}.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ */
+public class LexedDocument<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> {
+	private final String input;
+	private final C root, last;
+	private final int size;
+	private final int[] starts, ends;
+	private final Object[] heads, languages; //languages holds the Language stack (bottom first) after each token
+	private final int shiftFrom, shift; //The bounds of the tokens at or after shiftFrom are stored without shift added to them
+	
+	LexedDocument(String input, C root, C last, int size, int[] starts, int[] ends, Object[] heads, Object[] languages, int shiftFrom, int shift) {
+		this.input = input;
+		this.root = root;
+		this.last = last;
+		this.size = size;
+		this.starts = starts;
+		this.ends = ends;
+		this.heads = heads;
+		this.languages = languages;
+		this.shiftFrom = shiftFrom;
+		this.shift = shift;
+	}
+	
+	/**
+	 * @return the input that was lexed
+	 */
+	public String getInput() {
+		return input;
+	}
+	
+	/**
+	 * @return the root cell of the resulting cell tree (the left-most cell) or {@code null} if no tokens were found
+	 */
+	public C getRoot() {
+		return root;
+	}
+	
+	/**
+	 * @return the number of top-level tokens in the {@link LexedDocument}
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a top-level token
+	 * @return the index in the input at which the top-level token starts
+	 */
+	public int getStart(int index) {
+		return start(checkIndex(index));
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a top-level token
+	 * @return the index in the input at which the top-level token ends (exclusive)
+	 */
+	public int getEnd(int index) {
+		return end(checkIndex(index));
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a top-level token
+	 * @return the first {@link ConsCell} produced for the top-level token
+	 */
+	@SuppressWarnings("unchecked")
+	public C getCell(int index) {
+		return (C) heads[checkIndex(index)];
+	}
+	
+	/**
+	 * Finds the first top-level token that ends at or after the given offset.
+	 * 
+	 * @param offset
+	 *            an index in the input
+	 * @return the index of the first top-level token that ends at or after {@code offset} or {@link #size()} if there is
+	 *         no such token
+	 */
+	public int indexOf(int offset) {
+		int low = 0, high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (end(mid) < offset)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+	/**
+	 * @return the {@link Language} stack (bottom first) that was active after the top-level token at {@code index}. Tokens
+	 *         with the same stack share the same array, which must not be modified
+	 */
+	@SuppressWarnings("unchecked")
+	Language<C, T, R, D, L>[] getLanguagesAfter(int index) {
+		return (Language<C, T, R, D, L>[]) languages[index];
+	}
+	
+	/**
+	 * @return the last {@link ConsCell} in the cell tree or {@code null} if no tokens were found
+	 */
+	C getLastCell() {
+		return last;
+	}
+	
+	private int start(int index) {
+		return index < shiftFrom ? starts[index] : starts[index] + shift;
+	}
+	
+	private int end(int index) {
+		return index < shiftFrom ? ends[index] : ends[index] + shift;
+	}
+	
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return index;
+	}
+	
+	/**
+	 * Records the top-level tokens of a {@link LexedDocument} while it is being lexed. The cells themselves are linked by the
+	 * {@link LexerState} that produced them.
+	 */
+	static class Builder<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> {
+		private int size = 0;
+		private int[] starts, ends;
+		private Object[] heads, languages;
+		
+		Builder(int capacity) {
+			capacity = Math.max(capacity, 8);
+			starts = new int[capacity];
+			ends = new int[capacity];
+			heads = new Object[capacity];
+			languages = new Object[capacity];
+		}
+		
+		/**
+		 * Adds a top-level token. {@code languages} should be obtained with {@link LexerState#getLanguages(Language[])} from
+		 * {@link #getLastLanguages()} so that runs of tokens with the same {@link Language} stack share one array.
+		 */
+		void add(int start, int end, C cells, Language<C, T, R, D, L>[] languages) {
+			ensureCapacity(size + 1);
+			starts[size] = start;
+			ends[size] = end;
+			heads[size] = cells;
+			this.languages[size++] = languages;
+		}
+		
+		/**
+		 * @return the {@link Language} stack after the most recently added token or {@code null} if no tokens have been added
+		 */
+		@SuppressWarnings("unchecked")
+		Language<C, T, R, D, L>[] getLastLanguages() {
+			return size == 0 ? null : (Language<C, T, R, D, L>[]) languages[size - 1];
+		}
+		
+		private void ensureCapacity(int capacity) {
+			if (capacity <= starts.length)
+				return;
+			capacity = Math.max(capacity, starts.length + (starts.length >> 1));
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			heads = Arrays.copyOf(heads, capacity);
+			languages = Arrays.copyOf(languages, capacity);
+		}
+		
+		LexedDocument<C, T, R, D, L> build(String input, C root, C last) {
+			return new LexedDocument<>(input, root, last, size, starts, ends, heads, languages, size, 0);
+		}
+		
+		/**
+		 * Builds the {@link LexedDocument} for an edit of {@code previous} in which the tokens in this {@link Builder} replace
+		 * the tokens in {@code previous} from {@code first} up to (but not including) {@code next}.<br>
+		 * The result takes over the arrays of {@code previous}. The tokens after the replaced ones are only moved within them if
+		 * the number of tokens changed, and their bounds are shifted lazily. Only the tokens between the previous edit and this
+		 * one have their bounds adjusted.
+		 */
+		LexedDocument<C, T, R, D, L> splice(LexedDocument<C, T, R, D, L> previous, int first, int next, int delta, String input, C root, C last) {
+			int[] starts = previous.starts, ends = previous.ends;
+			Object[] heads = previous.heads, languages = previous.languages;
+			int shiftFrom = Math.min(previous.shiftFrom, previous.size), shift = previous.shift;
+			for (int i = shiftFrom; i < first; i++) { //The tokens before the edit are stored with their shift applied
+				starts[i] += shift;
+				ends[i] += shift;
+			}
+			for (int i = next; i < shiftFrom; i++) { //The tokens after the edit are stored without their shift applied
+				starts[i] -= shift;
+				ends[i] -= shift;
+			}
+			int to = first + size, newSize = previous.size - next + to;
+			if (newSize > starts.length) {
+				int capacity = Math.max(newSize, starts.length + (starts.length >> 1));
+				starts = Arrays.copyOf(starts, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				heads = Arrays.copyOf(heads, capacity);
+				languages = Arrays.copyOf(languages, capacity);
+			}
+			if (to != next) {
+				System.arraycopy(starts, next, starts, to, previous.size - next);
+				System.arraycopy(ends, next, ends, to, previous.size - next);
+				System.arraycopy(heads, next, heads, to, previous.size - next);
+				System.arraycopy(languages, next, languages, to, previous.size - next);
+				if (newSize < previous.size) { //Release the cells and Language stacks that are no longer referenced
+					Arrays.fill(heads, newSize, previous.size, null);
+					Arrays.fill(languages, newSize, previous.size, null);
+				}
+			}
+			System.arraycopy(this.starts, 0, starts, first, size);
+			System.arraycopy(this.ends, 0, ends, first, size);
+			System.arraycopy(this.heads, 0, heads, first, size);
+			System.arraycopy(this.languages, 0, languages, first, size);
+			return new LexedDocument<>(input, root, last, newSize, starts, ends, heads, languages, to, shift + delta);
+		}
+	}
+}
@@ -1,12 +1,24 @@
 package toberumono.lexer.base;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
 import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import toberumono.lexer.errors.EmptyInputException;
+import toberumono.lexer.errors.LexerAbortedException;
 import toberumono.lexer.errors.LexerException;
+import toberumono.lexer.util.TextSlice;
 import toberumono.structures.sexpressions.ConsCell;
 import toberumono.structures.sexpressions.ConsCellConstructor;
 import toberumono.structures.sexpressions.ConsType;
@@ -58,6 +70,213 @@ public interface Lexer<C extends GenericConsCell<C, T>, T extends ConsType, R ex
 	 */
 	public C lex(String input, Language<C, T, R, D, L> language) throws LexerException;
 	
+	/**
+	 * Tokenizes a {@link String} with every {@link GenericConsCell ConsCell} (including those produced by {@link Rule}
+	 * actions through {@link #getConsCellConstructor()}) taken from the given {@link ConsCellArena}.<br>
+	 * The result remains valid until {@link ConsCellArena#release() arena.release()} is called, after which its cells will
+	 * be reused by the next run that uses {@code arena}.
+	 * 
+	 * @param input
+	 *            the input to tokenize
+	 * @param arena
+	 *            the {@link ConsCellArena} from which to take cells
+	 * @return the tokenized input
+	 * @throws LexerException
+	 *             if something goes wrong while lexing the input
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support arenas (this is what the default implementation does)
+	 */
+	public default C lexWithArena(String input, ConsCellArena<C, T> arena) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support arenas.");
+	}
+	
+	/**
+	 * Tokenizes a {@link String}, stopping early if the given {@link LexerDeadline} requires it.<br>
+	 * The {@link LexerDeadline} is checked between tokens and periodically while a single token is being matched.
+	 * 
+	 * @param input
+	 *            the input to tokenize
+	 * @param deadline
+	 *            the {@link LexerDeadline} that bounds the run
+	 * @return the tokenized input
+	 * @throws LexerAbortedException
+	 *             if the run was stopped early. Its {@link LexerAbortedException#getState() state} holds the top-level
+	 *             tokens that were produced before it stopped
+	 * @throws LexerException
+	 *             if something else goes wrong while lexing the input
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support deadlines (this is what the default implementation does)
+	 */
+	public default C lexWithDeadline(String input, LexerDeadline deadline) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support deadlines.");
+	}
+	
+	/**
+	 * Tokenizes a {@link String} on the given {@link Executor}.<br>
+	 * The run is stopped with a {@link LexerAbortedException} once {@code timeout} has passed. Cancelling the returned
+	 * {@link CompletableFuture} also stops the run at the next check.
+	 * 
+	 * @param input
+	 *            the input to tokenize
+	 * @param timeout
+	 *            the maximum amount of time that the run may take, measured from when this method is called. If this is
+	 *            {@code null}, there is no time limit
+	 * @param executor
+	 *            the {@link Executor} on which to run the {@link Lexer}
+	 * @return a {@link CompletableFuture} that completes with the tokenized input or exceptionally with the
+	 *         {@link LexerException} that stopped the run (or with the {@link java.util.concurrent.RejectedExecutionException
+	 *         RejectedExecutionException} thrown by {@code executor} if it does not accept the run)
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support asynchronous lexing (this is what the default implementation does)
+	 * @see #lexWithDeadline(String, LexerDeadline)
+	 */
+	public default CompletableFuture<C> lexAsync(String input, Duration timeout, Executor executor) {
+		throw new UnsupportedOperationException("This Lexer does not support asynchronous lexing.");
+	}
+	
+	/**
+	 * Tokenizes a {@link String} on the {@link ForkJoinPool#commonPool() common pool}.
+	 * 
+	 * @param input
+	 *            the input to tokenize
+	 * @param timeout
+	 *            the maximum amount of time that the run may take, measured from when this method is called. If this is
+	 *            {@code null}, there is no time limit
+	 * @return a {@link CompletableFuture} that completes with the tokenized input or exceptionally with the
+	 *         {@link LexerException} that stopped the run
+	 * @see #lexAsync(String, Duration, Executor)
+	 */
+	public default CompletableFuture<C> lexAsync(String input, Duration timeout) {
+		return lexAsync(input, timeout, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Tokenizes a {@link String}, lexing large sibling {@link Descender} subtrees concurrently on the given
+	 * {@link ForkJoinPool}.<br>
+	 * A quick prepass pairs the open and close tokens of the {@link Descender Descenders} whose {@link Pattern Patterns} are
+	 * {@link Pattern#LITERAL literal}, skipping over the matches of the ignores and of the rules named in
+	 * {@code opaqueRules}. Each sufficiently large subtree is then lexed as a separate task and spliced back into its parent
+	 * in order. If a subtree does not end where the prepass predicted or any task fails, the remaining tasks are stopped and
+	 * the input is lexed again sequentially, so the result (or exception) is always the same as that of
+	 * {@link #lex(String)}.<br>
+	 * <b>Note:</b> the actions of the {@link Rule Rules} and {@link Descender Descenders} must be thread-safe, and the
+	 * actions of tokens that are not close tokens must not depend on the tokens that precede them. Because the input is lexed
+	 * again after a failure (including one caused by an error in the input itself), the actions of some tokens can be
+	 * performed twice, so they should not have side effects that must happen exactly once.
+	 * 
+	 * @param input
+	 *            the input to tokenize
+	 * @param opaqueRules
+	 *            the names of the rules whose tokens can contain {@link Descender} delimiters, such as strings
+	 * @param pool
+	 *            the {@link ForkJoinPool} on which to lex the subtrees
+	 * @return the tokenized input
+	 * @throws EmptyInputException
+	 *             if the input is empty
+	 * @throws LexerException
+	 *             if something else goes wrong while lexing the input
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support parallel lexing (this is what the default implementation does)
+	 */
+	public default C lexParallel(String input, Collection<String> opaqueRules, ForkJoinPool pool) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support parallel lexing.");
+	}
+	
+	/**
+	 * Tokenizes a {@link String}, lexing large sibling {@link Descender} subtrees concurrently on the
+	 * {@link ForkJoinPool#commonPool() common pool}.
+	 * 
+	 * @param input
+	 *            the input to tokenize
+	 * @param opaqueRules
+	 *            the names of the rules whose tokens can contain {@link Descender} delimiters, such as strings
+	 * @return the tokenized input
+	 * @throws EmptyInputException
+	 *             if the input is empty
+	 * @throws LexerException
+	 *             if something else goes wrong while lexing the input
+	 * @see #lexParallel(String, Collection, ForkJoinPool)
+	 */
+	public default C lexParallel(String input, Collection<String> opaqueRules) throws LexerException {
+		return lexParallel(input, opaqueRules, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Tokenizes a {@link String}, but only keeps the tokens produced by the named {@link Rule Rules} and
+	 * {@link Descender Descenders}. Every other {@link Pattern} is still matched so that the input is segmented exactly as it
+	 * is by {@link #lex(String)}, but:
+	 * <ul>
+	 * <li>The actions of {@link Rule Rules} that are not kept are not performed, so they do not produce any
+	 * {@link ConsCell ConsCells}.</li>
+	 * <li>The open and close actions of {@link Descender Descenders} that are not kept are performed (they can change the
+	 * {@link Language}), but the kept tokens within their descents are added to the enclosing descent in place of the
+	 * result of the close action.</li>
+	 * <li>Descents that nothing is kept from are still lexed (without performing the actions of their {@link Rule Rules})
+	 * rather than skipped with a scan for their close tokens, because only the {@link Lexer} knows which delimiters are
+	 * within tokens such as strings.</li>
+	 * </ul>
+	 * Selection is by name because the {@link ConsType} of a token is only known once its action has been performed.
+	 * 
+	 * @param input
+	 *            the input to be tokenized
+	 * @param keep
+	 *            the names of the {@link Rule Rules} and {@link Descender Descenders} whose tokens are kept
+	 * @return the kept tokens or {@code null} if none were kept
+	 * @throws LexerException
+	 *             if an error occurs while tokenizing the input
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support selective lexing (this is what the default implementation does)
+	 */
+	public default C lexSelective(String input, Collection<String> keep) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support selective lexing.");
+	}
+	
+	/**
+	 * Tokenizes a {@link String} in recovery mode. Instead of stopping at the first error, the {@link Lexer} records a
+	 * {@link LexerDiagnostic} for it and continues:
+	 * <ul>
+	 * <li>Input that no {@link Pattern} matches is skipped up to the start of the next match of {@code sync} or, if
+	 * {@code sync} is {@code null}, up to the next position at which any {@link Pattern} in the active {@link Language}
+	 * matches.</li>
+	 * <li>Close tokens of {@link Descender Descenders} that are not open are skipped.</li>
+	 * <li>{@link Descender Descenders} that are still open at the end of the input are closed there.</li>
+	 * </ul>
+	 * Skipped input is emitted as a token with a {@code car} value of the skipped text and a {@code car} type of
+	 * {@code errorType} (unless {@code errorType} is {@code null}).
+	 * 
+	 * @param input
+	 *            the input to be tokenized
+	 * @param errorType
+	 *            the {@link ConsType} of the tokens emitted for skipped input or {@code null} to emit no tokens for it
+	 * @param sync
+	 *            a {@link Pattern} that marks where lexing can safely resume after unrecognized input or {@code null}
+	 * @return the tokens that were produced together with a {@link LexerDiagnostic} for each error. If {@code input} is
+	 *         empty, the root is {@code null}
+	 * @throws LexerException
+	 *             if an error from which the {@link Lexer} cannot recover occurs
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support recovery mode (this is what the default implementation does)
+	 */
+	public default RecoveredResult<C> lexRecovering(String input, T errorType, Pattern sync) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support recovery mode.");
+	}
+	
+	/**
+	 * Tokenizes a {@link String} in recovery mode without a sync {@link Pattern}.
+	 * 
+	 * @param input
+	 *            the input to be tokenized
+	 * @param errorType
+	 *            the {@link ConsType} of the tokens emitted for skipped input or {@code null} to emit no tokens for it
+	 * @return the tokens that were produced together with a {@link LexerDiagnostic} for each error
+	 * @throws LexerException
+	 *             if an error from which the {@link Lexer} cannot recover occurs
+	 * @see #lexRecovering(String, ConsType, Pattern)
+	 */
+	public default RecoveredResult<C> lexRecovering(String input, T errorType) throws LexerException {
+		return lexRecovering(input, errorType, null);
+	}
+	
 	/**
 	 * Tokenizes the remaining {@link LexerState#getInput() input} in the given {@link LexerState}.<br>
 	 * Use {@link #lex(String)} to tokenize an input from the beginning.
@@ -72,11 +291,172 @@ public interface Lexer<C extends GenericConsCell<C, T>, T extends ConsType, R ex
 	 */
 	public C lex(LexerState<C, T, R, D, L> state) throws LexerException;
 	
+	/**
+	 * Tokenizes a {@link String} and records where each top-level token starts and ends so that the result can be updated
+	 * with {@link #relex(LexedDocument, int, int, String)} after the {@link String} is edited.<br>
+	 * Unlike {@link #lex(String)}, this does not throw an {@link EmptyInputException} if {@code input} contains no tokens.
+	 * 
+	 * @param input
+	 *            the {@link String} to tokenize
+	 * @return a {@link LexedDocument} containing the tokens in the {@link String}
+	 * @throws LexerException
+	 *             so that lexer exceptions can be propagated back to the original caller
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support incremental lexing (this is what the default implementation does)
+	 * @see #relex(LexedDocument, int, int, String)
+	 */
+	public default LexedDocument<C, T, R, D, L> lexDocument(String input) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support incremental lexing.");
+	}
+	
+	/**
+	 * Incrementally re-tokenizes a {@link LexedDocument} after an edit that replaces {@code removed} characters at
+	 * {@code offset} with {@code inserted}.<br>
+	 * Lexing restarts at the last top-level token boundary before the edit and stops as soon as a new top-level token ends
+	 * at the same (shifted) position as one of the old top-level tokens with the same {@link Language} stack. The
+	 * {@link ConsCell ConsCells} of the tokens before and after the re-lexed region are moved from {@code previous} into the
+	 * result without being re-lexed or copied, so their {@code car} values (including lazily produced ones) are not touched.
+	 * Only the cells at the boundaries of the re-lexed region are relinked, and the positions of the tokens after it are
+	 * shifted lazily.<br>
+	 * Because re-synchronization only happens between top-level tokens, an edit inside a descended block re-lexes the whole
+	 * top-level block that contains it, including every nested block within it.<br>
+	 * <b>Note:</b> {@code previous} must not be used after this method returns successfully. If this method throws an
+	 * exception, {@code previous} is left unchanged.
+	 * 
+	 * @param previous
+	 *            the {@link LexedDocument} produced for the input before the edit. Its cells are reused by the result
+	 * @param offset
+	 *            the index in the old input at which the edit starts
+	 * @param removed
+	 *            the number of characters removed from the old input
+	 * @param inserted
+	 *            the text inserted at {@code offset}
+	 * @return a {@link LexedDocument} for the edited input
+	 * @throws LexerException
+	 *             so that lexer exceptions can be propagated back to the original caller
+	 * @throws IndexOutOfBoundsException
+	 *             if the edit does not lie within the old input
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support incremental lexing (this is what the default implementation does)
+	 * @see #lexDocument(String)
+	 */
+	public default LexedDocument<C, T, R, D, L> relex(LexedDocument<C, T, R, D, L> previous, int offset, int removed, String inserted) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support incremental lexing.");
+	}
+	
+	/**
+	 * Tokenizes a {@link String} into a {@link TokenTape}, which stores the type, start, end, and parent of each token in
+	 * parallel primitive arrays instead of building {@link ConsCell ConsCells}.<br>
+	 * {@link Descender} open actions are run while lexing because they can change the active {@link Language}. {@link Rule}
+	 * actions and {@link Descender} close actions are deferred until the corresponding {@link ConsCell ConsCells} are
+	 * requested from the {@link TokenTape}, so {@link Rule Rules} whose actions modify the {@link LexerState} are not
+	 * supported. In place of each close action, the {@link Language} stack is restored to what it was before the matching
+	 * open action when a descent ends, and each close action is later performed on the {@link Language} stack that its open
+	 * action produced. Therefore, close actions must undo exactly the changes that their open actions made to the
+	 * {@link Language} stack (for example, by calling {@link LexerState#popLanguage()} once for each call to
+	 * {@link LexerState#pushLanguage(Language)} in the open action).
+	 * 
+	 * @param input
+	 *            the {@link String} to tokenize
+	 * @return a {@link TokenTape} containing the tokens in the {@link String}
+	 * @throws LexerException
+	 *             so that lexer exceptions can be propagated back to the original caller
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support token tapes (this is what the default implementation does)
+	 */
+	public default TokenTape<C, T, R, D, L> lexToTape(String input) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support token tapes.");
+	}
+	
+	/**
+	 * Tokenizes a {@link String} in two phases. The first phase only matches the input and records the tokens in a
+	 * {@link TokenTape} (as {@link #lexToTape(String)} does). The second phase performs the actions of the tokens whose
+	 * actions are {@link PureAction PureActions} in parallel in {@code pool} and then assembles the cell tree in order,
+	 * performing the remaining actions and the {@link Descender} close actions as it goes (see
+	 * {@link TokenTape#getRoot(ForkJoinPool)}).<br>
+	 * The same restrictions on actions apply as for {@link #lexToTape(String)}.
+	 * 
+	 * @param input
+	 *            the {@link String} to tokenize
+	 * @param pool
+	 *            the {@link ForkJoinPool} in which to perform the {@link PureAction PureActions}
+	 * @return the root cell of the resulting cell tree or {@code null} if the input contains no tokens
+	 * @throws LexerException
+	 *             so that lexer exceptions can be propagated back to the original caller
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support two-phase lexing (this is what the default implementation does)
+	 */
+	public default C lexTwoPhase(String input, ForkJoinPool pool) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support two-phase lexing.");
+	}
+	
+	/**
+	 * Tokenizes a {@link String} in two phases using the {@link ForkJoinPool#commonPool() common pool}.
+	 * 
+	 * @param input
+	 *            the {@link String} to tokenize
+	 * @return the root cell of the resulting cell tree or {@code null} if the input contains no tokens
+	 * @throws LexerException
+	 *             so that lexer exceptions can be propagated back to the original caller
+	 * @see #lexTwoPhase(String, ForkJoinPool)
+	 */
+	public default C lexTwoPhase(String input) throws LexerException {
+		return lexTwoPhase(input, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Tokenizes a {@link String} into a {@link TokenStore}, which keeps its token records outside of the Java heap and spills
+	 * them to a memory-mapped temporary file once they take up more than {@code spillThreshold} bytes.<br>
+	 * The same restrictions on actions apply as for {@link #lexToTape(String)}. The returned {@link TokenStore} must be
+	 * {@link TokenStore#close() closed} to release its storage.
+	 * 
+	 * @param input
+	 *            the {@link String} to tokenize
+	 * @param spillThreshold
+	 *            the number of bytes of token records to keep in memory before spilling to disk. Records are also spilled
+	 *            if the JVM's direct memory limit ({@code -XX:MaxDirectMemorySize}) is reached first
+	 * @return a {@link TokenStore} containing the tokens in the {@link String}
+	 * @throws LexerException
+	 *             so that lexer exceptions can be propagated back to the original caller
+	 * @throws IOException
+	 *             if the temporary file could not be created or mapped. The {@link TokenStore} is closed before this is
+	 *             thrown, and any exception thrown while closing it is {@link Throwable#addSuppressed(Throwable) suppressed}
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support token stores (this is what the default implementation does)
+	 */
+	public default TokenStore<C, T, R, D, L> lexToStore(String input, long spillThreshold) throws LexerException, IOException {
+		throw new UnsupportedOperationException("This Lexer does not support token stores.");
+	}
+	
+	/**
+	 * Tokenizes a {@link String}, writing a record for each token into the given {@link TokenSink} instead of building
+	 * {@link ConsCell ConsCells}.<br>
+	 * The same restrictions on actions apply as for {@link #lexToTape(String)}.
+	 * 
+	 * @param <S>
+	 *            the type of the {@link TokenSink}
+	 * @param input
+	 *            the {@link String} to tokenize
+	 * @param sink
+	 *            the {@link TokenSink} into which the token records are written
+	 * @return {@code sink}
+	 * @throws LexerException
+	 *             so that lexer exceptions can be propagated back to the original caller
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support token sinks (this is what the default implementation does)
+	 */
+	public default <S extends TokenSink<C, T, R, D, L>> S lexInto(String input, S sink) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support token sinks.");
+	}
+	
 	/**
 	 * Gets the next token (wrapped in a {@link ConsCell ConsCell}) in the {@link LexerState LexerState's}
 	 * {@link LexerState#getInput() input}.<br>
 	 * This will throw an {@link EmptyInputException} if it encounters a close token.<br>
-	 * If {@code advance} is {@code true}, then this <i>will</i> modify {@code state's} head position.
+	 * If {@code advance} is {@code true}, then this <i>will</i> modify {@code state's} head position.<br>
+	 * If the token is already in the {@link LexerState LexerState's} lookahead buffer (see {@link #peek(LexerState, int)}),
+	 * it is not matched again and its action is not performed again. Otherwise, it is added to the buffer if
+	 * {@code advance} is {@code false}.
 	 * 
 	 * @param state
 	 *            the {@link LexerState} to use
@@ -92,6 +472,58 @@ public interface Lexer<C extends GenericConsCell<C, T>, T extends ConsType, R ex
 	 */
 	public C getNextConsCell(LexerState<C, T, R, D, L> state, boolean advance) throws LexerException;
 	
+	/**
+	 * Gets the token {@code k} tokens after the next one in the {@link LexerState LexerState's}
+	 * {@link LexerState#getInput() input} without advancing the {@link LexerState LexerState's} head position. So,
+	 * {@code peek(state, 0)} is equivalent to {@code getNextConsCell(state, false)}.<br>
+	 * The tokens up to and including that token are kept in the {@link LexerState LexerState's} lookahead buffer with the
+	 * results of their actions (which are performed in order, once each), so later calls to this method and to
+	 * {@link #getNextConsCell(LexerState, boolean)} do not need to match them or perform their actions again.
+	 * 
+	 * @param state
+	 *            the {@link LexerState} to use
+	 * @param k
+	 *            the number of tokens to look past
+	 * @return the token (wrapped in a {@link ConsCell ConsCell})
+	 * @throws EmptyInputException
+	 *             if the end of the input or of the current descent comes before that token
+	 * @throws LexerException
+	 *             so that lexer exceptions can be propagated back to the original caller
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support lookahead (this is what the default implementation does)
+	 */
+	public default C peek(LexerState<C, T, R, D, L> state, int k) throws LexerException {
+		throw new UnsupportedOperationException("This Lexer does not support lookahead.");
+	}
+	
+	/**
+	 * Determines whether any untokenized input remains after skipping over cells that are set to be ignored and the next
+	 * matched cell would not be the close token of the {@link LexerState LexerState's} {@link Descender}.<br>
+	 * This moves the head position past any ignored input and keeps the match in the {@link LexerState LexerState's}
+	 * lookahead buffer, so the following call to {@link #getNextConsCell(LexerState, boolean)} does not need to find it again.
+	 * 
+	 * The default implementation matches the next token without using the lookahead buffer.
+	 * 
+	 * @param state
+	 *            the {@link LexerState} to use
+	 * @return {@code true} if there is still untokenized input at the current descent level, otherwise {@code false}
+	 * @see LexerState#hasNext()
+	 */
+	public default boolean hasNext(LexerState<C, T, R, D, L> state) {
+		if (state.getHead() + skipIgnores(state) >= state.getInput().length())
+			return false;
+		if (state.getDescender() == null)
+			return true;
+		Matcher longest = null;
+		for (Pattern p : state.getLanguage().getPatterns().keySet()) {
+			Matcher m = p.matcher(state.getInput());
+			if (m.find(state.getHead()) && m.start() == state.getHead() &&
+					(longest == null || m.end() > longest.end() || (m.end() == longest.end() && p == state.getDescender().getClosePattern())))
+				longest = m;
+		}
+		return longest == null || longest.pattern() != state.getDescender().getClosePattern();
+	}
+	
 	/**
 	 * Skips over cells that are set to be ignored.<br>
 	 * This <i>does</i> modify the passed {@link LexerState}.
@@ -117,6 +549,125 @@ public interface Lexer<C extends GenericConsCell<C, T>, T extends ConsType, R ex
 	 */
 	public T getEmptyType();
 	
+	/**
+	 * The default implementation returns {@code false}.
+	 * 
+	 * @return {@code true} if the default {@link Rule} actions use {@link TextSlice TextSlices} of the input as their
+	 *         {@code car} values instead of copying the matched text into a new {@link String}
+	 * @see #setSlicingText(boolean)
+	 */
+	public default boolean isSlicingText() {
+		return false;
+	}
+	
+	/**
+	 * Sets whether the default {@link Rule} actions use {@link TextSlice TextSlices} of the input as their {@code car} values
+	 * instead of copying the matched text into a new {@link String}.<br>
+	 * This is {@code false} by default. Enabling it avoids copying the text of every token (which is especially wasteful for
+	 * large tokens such as block comments), at the cost of every such token keeping the input alive.
+	 * 
+	 * @param slicingText
+	 *            whether to use {@link TextSlice TextSlices}
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support slicing text (this is what the default implementation does)
+	 */
+	public default void setSlicingText(boolean slicingText) {
+		throw new UnsupportedOperationException("This Lexer does not support slicing text.");
+	}
+	
+	/**
+	 * The default implementation returns {@code null}.
+	 * 
+	 * @return the {@link MatchBudget} that limits the work done by each {@link Pattern} at each position or {@code null} if
+	 *         there is no limit
+	 * @see #setMatchBudget(MatchBudget)
+	 */
+	public default MatchBudget getMatchBudget() {
+		return null;
+	}
+	
+	/**
+	 * Sets the {@link MatchBudget} that limits the work done by each {@link Pattern} at each position. This protects the
+	 * {@link Lexer} from {@link Pattern Patterns} that backtrack catastrophically on some inputs.<br>
+	 * This is {@code null} (no limit) by default. Because every read from the input has to be counted, a {@link MatchBudget}
+	 * makes matching somewhat slower.
+	 * 
+	 * @param matchBudget
+	 *            the {@link MatchBudget} or {@code null} to remove the limit
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support match budgets (this is what the default implementation does)
+	 */
+	public default void setMatchBudget(MatchBudget matchBudget) {
+		throw new UnsupportedOperationException("This Lexer does not support match budgets.");
+	}
+	
+	/**
+	 * The default implementation returns {@code false}.
+	 * 
+	 * @return {@code true} if the {@link LexerException LexerExceptions} thrown by the {@link Lexer} do not capture stack
+	 *         traces
+	 * @see #setStacklessExceptions(boolean)
+	 */
+	public default boolean isStacklessExceptions() {
+		return false;
+	}
+	
+	/**
+	 * Sets whether the {@link LexerException LexerExceptions} thrown by the {@link Lexer} skip capturing stack traces.<br>
+	 * This is {@code false} by default. Enabling it makes rejecting malformed input much cheaper, which is useful when
+	 * validating large numbers of documents where only the position and {@link LexerException#getContext() context} of
+	 * each error matter.
+	 * 
+	 * @param stacklessExceptions
+	 *            whether to skip capturing stack traces
+	 * @throws UnsupportedOperationException
+	 *             if the {@link Lexer} does not support stackless exceptions (this is what the default implementation does)
+	 */
+	public default void setStacklessExceptions(boolean stacklessExceptions) {
+		throw new UnsupportedOperationException("This Lexer does not support stackless exceptions.");
+	}
+	
+	/**
+	 * Gets the text matched by {@code match} in the form that the default {@link Rule} actions use as their {@code car}
+	 * values.
+	 * 
+	 * @param state
+	 *            the {@link LexerState} in which the match was found
+	 * @param match
+	 *            the match
+	 * @return a {@link TextSlice} of the input if {@link #isSlicingText()} is {@code true}, otherwise
+	 *         {@link MatchResult#group() match.group()}
+	 */
+	public default CharSequence getText(LexerState<C, T, R, D, L> state, MatchResult match) {
+		return isSlicingText() ? TextSlice.of(state.getInput(), match) : match.group();
+	}
+	
+	/**
+	 * Lexes every regular file under {@code root} that is matched by {@code matcher} using a {@link FileLexer} with its
+	 * default settings.<br>
+	 * This method blocks until every matched file has been handed to either {@code onResult} or {@code onError}.
+	 * 
+	 * @param root
+	 *            the root of the file tree to lex
+	 * @param matcher
+	 *            the {@link PathMatcher} that selects the files to lex
+	 * @param onResult
+	 *            called with each file and the tokens in it
+	 * @param onError
+	 *            called with each file that could not be read, decoded, or lexed and the reason why
+	 * @return the number of files that were successfully lexed
+	 * @throws IOException
+	 *             if the file tree could not be walked
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting for the files to be lexed
+	 * @see FileLexer#lexFiles(Path, PathMatcher, BiConsumer, BiConsumer)
+	 */
+	public default int lexFiles(Path root, PathMatcher matcher, BiConsumer<Path, C> onResult, BiConsumer<Path, Throwable> onError) throws IOException, InterruptedException {
+		@SuppressWarnings("unchecked") //The Lexer is guaranteed to match L
+		FileLexer<C, T, R, D, L> fileLexer = new FileLexer<>((L) this);
+		return fileLexer.lexFiles(root, matcher, onResult, onError);
+	}
+	
 	/* ************************************************************************************************* */
 	/* The default implementation of methods from Language is to forward to the Lexer's primary Language */
 	/* ************************************************************************************************* */
@@ -149,6 +700,16 @@ public interface Lexer<C extends GenericConsCell<C, T>, T extends ConsType, R ex
 		getLanguage().addDescender(name, descender);
 	}
 	
+	@Override
+	public default void addLazyDescender(String name, D descender, T lazyType, String... opaqueRules) {
+		getLanguage().addLazyDescender(name, descender, lazyType, opaqueRules);
+	}
+	
+	@Override
+	public default void addSkippedDescender(String name, D descender, T spanType) {
+		getLanguage().addSkippedDescender(name, descender, spanType);
+	}
+	
 	@Override
 	public default D removeDescender(String name) {
 		return getLanguage().removeDescender(name);
@@ -210,6 +771,9 @@ public interface Lexer<C extends GenericConsCell<C, T>, T extends ConsType, R ex
 	}
 	
 	/**
+	 * The clone has its own copy of the {@link Language}, so it is only needed when the clone's rules must diverge from
+	 * those of the original. It is not needed in order to lex from multiple threads.
+	 * 
 	 * @return a clone of the {@link Lexer} that is in keeping with the conventions specified by {@link Cloneable}
 	 */
 	@Override
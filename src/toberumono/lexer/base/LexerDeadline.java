@@ -0,0 +1,83 @@
+package toberumono.lexer.base;
+
+import java.time.Duration;
+
+import toberumono.lexer.errors.LexerAbortedException;
+import toberumono.lexer.errors.LexerAbortedException.Reason;
+
+/**
+ * Bounds how long a {@link Lexer} run may take and allows it to be cancelled from another thread.<br>
+ * A {@link Lexer} that is given a {@link LexerDeadline} checks it between tokens and periodically while matching a single
+ * token, and throws a {@link LexerAbortedException} once the deadline has passed, the {@link LexerDeadline} has been
+ * {@link #cancel() cancelled}, or the lexing thread has been interrupted.
+ * 
+ * @author Toberumono
+ * @see LexerState#setDeadline(LexerDeadline)
+ */
+public final class LexerDeadline {
+	private final long deadline;
+	private volatile boolean cancelled;
+	
+	private LexerDeadline(long deadline) {
+		this.deadline = deadline;
+		cancelled = false;
+	}
+	
+	/**
+	 * @param timeout
+	 *            the amount of time after which the run should be stopped. If this is {@code null}, there is no time limit
+	 * @return a {@link LexerDeadline} that expires after {@code timeout}
+	 */
+	public static LexerDeadline after(Duration timeout) {
+		if (timeout == null)
+			return new LexerDeadline(Long.MAX_VALUE);
+		long now = System.nanoTime(), nanos;
+		try {
+			nanos = timeout.toNanos();
+		}
+		catch (ArithmeticException e) {
+			nanos = timeout.isNegative() ? Long.MIN_VALUE : Long.MAX_VALUE;
+		}
+		long end = now + nanos;
+		if (nanos > 0 && end < now) //Overflow, so there is effectively no time limit
+			end = Long.MAX_VALUE;
+		return new LexerDeadline(end);
+	}
+	
+	/**
+	 * @return a {@link LexerDeadline} that never expires but can still be {@link #cancel() cancelled}
+	 */
+	public static LexerDeadline none() {
+		return new LexerDeadline(Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Cancels any run using the {@link LexerDeadline}. This can be called from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * @return {@code true} if the {@link LexerDeadline} has been {@link #cancel() cancelled}
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * Determines whether a run using the {@link LexerDeadline} should stop. This does not clear the current thread's
+	 * interrupted status.
+	 * 
+	 * @return the {@link Reason} for which the run should stop or {@code null} if it can continue
+	 */
+	public Reason poll() {
+		if (cancelled)
+			return Reason.CANCELLED;
+		if (Thread.currentThread().isInterrupted())
+			return Reason.INTERRUPTED;
+		if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0)
+			return Reason.DEADLINE;
+		return null;
+	}
+}
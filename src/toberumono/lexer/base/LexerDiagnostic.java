@@ -0,0 +1,95 @@
+package toberumono.lexer.base;
+
+/**
+ * Describes an error that a {@link Lexer} recovered from while running in recovery mode.
+ * 
+ * @author Toberumono
+ * @see Lexer#lexRecovering(String, toberumono.structures.sexpressions.ConsType, java.util.regex.Pattern)
+ */
+public final class LexerDiagnostic {
+	private final Kind kind;
+	private final int start, end, depth;
+	private final String message;
+	
+	/**
+	 * The kinds of errors from which a {@link Lexer} can recover.
+	 * 
+	 * @author Toberumono
+	 */
+	public static enum Kind {
+		/**
+		 * Input that none of the {@link java.util.regex.Pattern Patterns} in the active {@link Language} match. It is skipped.
+		 */
+		UNRECOGNIZED_INPUT,
+		/**
+		 * The close token of a {@link Descender} other than the one that is currently open. It is skipped.
+		 */
+		UNBALANCED_DESCENDER,
+		/**
+		 * A {@link Descender} that is still open at the end of the input. It is closed at the end of the input.
+		 */
+		UNCLOSED_DESCENDER
+	}
+	
+	/**
+	 * Constructs a {@link LexerDiagnostic}.
+	 * 
+	 * @param kind
+	 *            the {@link Kind} of error
+	 * @param start
+	 *            the index at which the affected input starts (inclusive)
+	 * @param end
+	 *            the index at which the affected input ends (exclusive)
+	 * @param depth
+	 *            the number of {@link Descender Descenders} that enclosed the error
+	 * @param message
+	 *            a description of the error
+	 */
+	public LexerDiagnostic(Kind kind, int start, int end, int depth, String message) {
+		this.kind = kind;
+		this.start = start;
+		this.end = end;
+		this.depth = depth;
+		this.message = message;
+	}
+	
+	/**
+	 * @return the {@link Kind} of error
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+	
+	/**
+	 * @return the index at which the affected input starts (inclusive)
+	 */
+	public int getStart() {
+		return start;
+	}
+	
+	/**
+	 * @return the index at which the affected input ends (exclusive)
+	 */
+	public int getEnd() {
+		return end;
+	}
+	
+	/**
+	 * @return the number of {@link Descender Descenders} that enclosed the error
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * @return a description of the error
+	 */
+	public String getMessage() {
+		return message;
+	}
+	
+	@Override
+	public String toString() {
+		return kind + " [" + start + ", " + end + "): " + message;
+	}
+}
@@ -1,8 +1,11 @@
 package toberumono.lexer.base;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.List;
 import java.util.Stack;
 import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import toberumono.structures.sexpressions.ConsCell;
@@ -26,11 +29,19 @@ import toberumono.structures.sexpressions.GenericConsCell;
  *            the implementation of {@link Lexer} to be used
  */
 public class LexerState<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> {
-	private final String input;
-	private final D descender;
-	private L lexer;
-	private Stack<Language<C, T, R, D, L>> language;
-	private int head;
+	private String input;
+	private D descender;
+	private final L lexer;
+	private LanguageStack<C, T, R, D, L> language;
+	private Language<C, T, R, D, L> base;
+	private LexerState<C, T, R, D, L> child;
+	private LexerDeadline deadline;
+	private CharSequence matchInput;
+	private CheckingCharSequence checked;
+	private ErrorRecovery<T> recovery;
+	private Selection selection;
+	private List<Lookahead<C, T, R, D, L>> lookahead;
+	private int head, depth;
 	private C root, last;
 	
 	/**
@@ -61,11 +72,13 @@ public class LexerState<C extends GenericConsCell<C, T>, T extends ConsType, R e
 	 * @param lexer
 	 *            the {@link Lexer} for which the {@link LexerState} was created
 	 * @param language
-	 *            the {@link Language} that the {@link LexerState} is to use
+	 *            the {@link Language} that the {@link LexerState} is to use. The {@link LexerState} binds to its
+	 *            {@link Language#snapshot() snapshot}
 	 */
 	public LexerState(String input, int head, D descender, L lexer, Language<C, T, R, D, L> language) {
-		this(input, head, descender, lexer, new Stack<>());
-		this.language.push(language);
+		this(input, head, descender, lexer, new LanguageStack<>());
+		this.base = language;
+		this.language.push(language.snapshot());
 	}
 	
 	/**
@@ -80,14 +93,45 @@ public class LexerState<C extends GenericConsCell<C, T>, T extends ConsType, R e
 	 * @param lexer
 	 *            the {@link Lexer} for which the {@link LexerState} was created
 	 * @param language
-	 *            the {@link Language} that the {@link LexerState} is to use
+	 *            the {@link Language} stack that the {@link LexerState} is to use. It is shared rather than copied, so
+	 *            {@link #pushLanguage(Language)} and {@link #popLanguage()} modify it, and the {@link Language Languages}
+	 *            that it already holds are used as they are rather than through their {@link Language#snapshot()
+	 *            snapshots}
 	 */
 	public LexerState(String input, int head, D descender, L lexer, Stack<Language<C, T, R, D, L>> language) {
+		this(input, head, descender, lexer, new LanguageStack<>(language));
+		base = language.isEmpty() ? null : language.get(0);
+	}
+	
+	/**
+	 * Constructs a new {@link LexerState} whose {@link Language} stack holds the given {@link Language#snapshot()
+	 * snapshots}. This is used to resume lexing from a recorded position.
+	 * 
+	 * @param languages
+	 *            the {@link Language} stack (bottom first), as returned by {@link #getLanguages(Language[])}
+	 */
+	LexerState(String input, int head, D descender, L lexer, Language<C, T, R, D, L>[] languages) {
+		this(input, head, descender, lexer, new LanguageStack<>());
+		for (Language<C, T, R, D, L> l : languages)
+			language.push(l);
+		base = languages[0];
+	}
+	
+	private LexerState(String input, int head, D descender, L lexer, LanguageStack<C, T, R, D, L> language) {
 		this.input = input;
 		this.head = head;
 		this.descender = descender;
 		this.lexer = lexer;
 		this.language = language;
+		depth = 0;
+		base = null;
+		child = null;
+		deadline = null;
+		matchInput = input;
+		checked = null;
+		recovery = null;
+		selection = null;
+		lookahead = null;
 		last = root = null;
 	}
 	
@@ -97,6 +141,33 @@ public class LexerState<C extends GenericConsCell<C, T>, T extends ConsType, R e
 		this.last = last;
 	}
 	
+	/**
+	 * Prepares a top-level {@link LexerState} to lex a new input without allocating a new {@link LexerState}. This allows a
+	 * thread to keep one {@link LexerState} and call {@code lexer.lex(state.reset(input))} for each input.<br>
+	 * The head is moved to the start of the input, the output is cleared (cells that were produced by earlier runs are not
+	 * affected), and the {@link Language} stack is reset to the {@link Language#snapshot() snapshot} of the {@link Language}
+	 * with which the {@link LexerState} was created.
+	 * 
+	 * @param input
+	 *            the new input to be tokenized
+	 * @return {@code this} for easy chaining
+	 * @throws IllegalStateException
+	 *             if the {@link LexerState} was created by {@link #descend(Descender)}
+	 */
+	public LexerState<C, T, R, D, L> reset(String input) {
+		if (descender != null || base == null)
+			throw new IllegalStateException("Only top-level LexerStates can be reset.");
+		this.input = input;
+		checked = null;
+		matchInput = deadline == null ? input : getCheckedInput();
+		clearLookahead();
+		head = 0;
+		last = root = null;
+		language.clear();
+		language.push(base.snapshot());
+		return this;
+	}
+	
 	/**
 	 * @return the input {@link String} being lexed
 	 */
@@ -234,39 +305,282 @@ public class LexerState<C extends GenericConsCell<C, T>, T extends ConsType, R e
 	}
 	
 	/**
-	 * Constructs a new {@link LexerState} with the same fields but {@code null} cells and the descender set to {@code descender}.
+	 * Constructs a new {@link LexerState} with the same fields but {@code null} cells and the descender set to {@code descender}.<br>
+	 * The new {@link LexerState} shares this {@link LexerState LexerState's} {@link Language} stack.
 	 * 
 	 * @param descender
 	 *            the {@link Descender} that was encountered
 	 * @return a separate {@link LexerState} that is used to watch for the correct close cell
 	 */
 	public LexerState<C, T, R, D, L> descend(D descender) {
-		return new LexerState<>(getInput(), getHead(), descender, getLexer(), language);
+		return inherit(new LexerState<>(getInput(), getHead(), descender, getLexer(), language));
+	}
+	
+	/**
+	 * Like {@link #descend(Descender)}, but the returned {@link LexerState} is reused by later calls to this method on this
+	 * {@link LexerState}, so it must not be used once the descent for which it was created has finished. This is what
+	 * {@link AbstractLexer} uses while lexing so that each descent does not allocate a new {@link LexerState}.
+	 * 
+	 * @param descender
+	 *            the {@link Descender} that was encountered
+	 * @return a separate {@link LexerState} that is used to watch for the correct close cell
+	 */
+	LexerState<C, T, R, D, L> descendReusing(D descender) {
+		if (child == null)
+			return child = descend(descender);
+		child.input = getInput();
+		child.head = getHead();
+		child.descender = descender;
+		child.language = language;
+		child.last = child.root = null;
+		child.clearLookahead();
+		return inherit(child);
+	}
+	
+	private LexerState<C, T, R, D, L> inherit(LexerState<C, T, R, D, L> descended) {
+		descended.depth = depth + 1;
+		descended.deadline = deadline;
+		descended.matchInput = matchInput;
+		descended.checked = checked;
+		descended.recovery = recovery;
+		descended.selection = selection;
+		return descended;
+	}
+	
+	/**
+	 * Like {@link #descend(Descender)}, but the returned {@link LexerState} is not reused and has its own copy of the
+	 * {@link Language} stack, so it can be used on another thread while this {@link LexerState} continues past the
+	 * descent. It does not inherit recovery mode.
+	 * 
+	 * @param descender
+	 *            the {@link Descender} that was encountered
+	 * @return an independent {@link LexerState} that is used to watch for the correct close cell
+	 */
+	LexerState<C, T, R, D, L> fork(D descender) {
+		LexerState<C, T, R, D, L> fork = shallowCopy();
+		fork.last = fork.root = null;
+		fork.descender = descender;
+		fork.depth = depth + 1;
+		fork.recovery = null;
+		return fork;
+	}
+	
+	/**
+	 * Records the {@link Language} stack so that lexing can later be resumed with it.
+	 * 
+	 * @param previous
+	 *            a previously recorded {@link Language} stack or {@code null}
+	 * @return {@code previous} if the {@link Language} stack holds the same {@link Language Languages}, otherwise a copy of
+	 *         the {@link Language} stack (bottom first)
+	 */
+	Language<C, T, R, D, L>[] getLanguages(Language<C, T, R, D, L>[] previous) {
+		return hasLanguages(previous) ? previous : language.toArray();
+	}
+	
+	/**
+	 * Replaces the contents of the {@link Language} stack, which is shared with the {@link LexerState LexerStates} produced
+	 * by {@link #descend(Descender)}.
+	 * 
+	 * @param languages
+	 *            a recorded {@link Language} stack (bottom first), as returned by {@link #getLanguages(Language[])}
+	 */
+	void setLanguages(Language<C, T, R, D, L>[] languages) {
+		language.clear();
+		for (Language<C, T, R, D, L> l : languages)
+			language.push(l);
+	}
+	
+	/**
+	 * @param languages
+	 *            a recorded {@link Language} stack or {@code null}
+	 * @return {@code true} if the {@link Language} stack holds exactly the {@link Language Languages} in {@code languages}
+	 */
+	boolean hasLanguages(Language<C, T, R, D, L>[] languages) {
+		if (languages == null || languages.length != language.size())
+			return false;
+		for (int i = languages.length - 1; i >= 0; i--) //The top is the most likely to differ
+			if (languages[i] != language.get(i))
+				return false;
+		return true;
+	}
+	
+	/**
+	 * @return the number of {@link Language Languages} on the {@link Language} stack
+	 */
+	int getLanguageDepth() {
+		return language.size();
+	}
+	
+	/**
+	 * @return the number of {@link Descender Descenders} that enclose the head position (this is {@code 0} for top-level
+	 *         {@link LexerState LexerStates})
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * @return the {@link LexerDeadline} that bounds the run using this {@link LexerState} or {@code null} if there is none
+	 */
+	public LexerDeadline getDeadline() {
+		return deadline;
+	}
+	
+	/**
+	 * Sets the {@link LexerDeadline} that bounds the run using this {@link LexerState}. It is passed on to the
+	 * {@link LexerState LexerStates} produced by {@link #descend(Descender)}.
+	 * 
+	 * @param deadline
+	 *            the {@link LexerDeadline} or {@code null} to remove any existing one
+	 * @return {@code this} for easy chaining
+	 */
+	public LexerState<C, T, R, D, L> setDeadline(LexerDeadline deadline) {
+		this.deadline = deadline;
+		checked = null;
+		matchInput = deadline == null ? input : getCheckedInput();
+		return this;
+	}
+	
+	/**
+	 * @return the view of the {@link #getInput() input} that should be handed to {@link Pattern#matcher(CharSequence)}. This
+	 *         checks the {@link #getDeadline() deadline} (if any) while a match is in progress
+	 */
+	public CharSequence getMatchInput() {
+		return matchInput;
+	}
+	
+	/**
+	 * @return a view of the {@link #getInput() input} that checks the {@link #getDeadline() deadline} (if any) and can have a
+	 *         {@link CheckingCharSequence#setBudget(long) budget}. This is created as needed and shared with the
+	 *         {@link LexerState LexerStates} produced by {@link #descend(Descender)}
+	 */
+	CheckingCharSequence getCheckedInput() {
+		if (checked == null)
+			checked = new CheckingCharSequence(input, deadline);
+		return checked;
+	}
+	
+	/**
+	 * @return the {@link ErrorRecovery} of the run using this {@link LexerState} or {@code null} if it is not in recovery mode
+	 */
+	ErrorRecovery<T> getRecovery() {
+		return recovery;
+	}
+	
+	/**
+	 * Puts the run using this {@link LexerState} into recovery mode. It is passed on to the {@link LexerState LexerStates}
+	 * produced by {@link #descend(Descender)}.
+	 * 
+	 * @param recovery
+	 *            the {@link ErrorRecovery} or {@code null} to leave recovery mode
+	 * @return {@code this} for easy chaining
+	 */
+	LexerState<C, T, R, D, L> setRecovery(ErrorRecovery<T> recovery) {
+		this.recovery = recovery;
+		return this;
+	}
+	
+	/**
+	 * @return the {@link Selection} of the run using this {@link LexerState} or {@code null} if every token is kept
+	 */
+	Selection getSelection() {
+		return selection;
+	}
+	
+	/**
+	 * Restricts the tokens that the run using this {@link LexerState} keeps. It is passed on to the {@link LexerState
+	 * LexerStates} produced by {@link #descend(Descender)}.
+	 * 
+	 * @param selection
+	 *            the {@link Selection} or {@code null} to keep every token
+	 * @return {@code this} for easy chaining
+	 */
+	LexerState<C, T, R, D, L> setSelection(Selection selection) {
+		this.selection = selection;
+		return this;
 	}
 	
 	/**
 	 * This method returns true if any untokenized input remains after skipping over cells that are set to be ignored and the next matched cell would
 	 * not be an ascent cell.<br>
-	 * <b>Note</b>: This is <i>slow</i> - the {@link Lexer} already implicitly performs these checks before getting the next cell, so if you are
-	 * calling this regularly, consider re-working the logic behind your rules.
+	 * The match that this finds is kept in the {@link LexerState LexerState's} lookahead buffer, so the next call to
+	 * {@link Lexer#getNextConsCell(LexerState, boolean)} or {@link Lexer#peek(LexerState, int)} does not need to find it again.
 	 * 
 	 * @return {@code true} if there is still untokenized input at the current descent level, otherwise {@code false}.
+	 * @see Lexer#hasNext(LexerState)
 	 */
 	public boolean hasNext() {
-		if (getHead() + getLexer().skipIgnores(this) < getInput().length()) {
-			if (getDescender() != null) {
-				Matcher longest = null;
-				for (Pattern p : getLexer().getPatterns().keySet()) {
-					Matcher m = p.matcher(getInput());
-					if (m.find(getHead()) && m.start() == getHead() &&
-							(longest == null || m.end() > longest.end() || (getDescender() != null && m.end() == longest.end() && p == getDescender().getClosePattern())))
-						longest = m;
-				}
-				return longest.pattern() != getDescender().getClosePattern();
-			}
-			return true;
+		return getLexer().hasNext(this);
+	}
+	
+	/**
+	 * Gets the {@code k}th token in the lookahead buffer. If the head position or the active {@link Language} has changed
+	 * since the buffer was filled, the buffer is cleared first. The {@link Language} that should be active is the one that
+	 * was active after the last token whose action has been performed (actions can push or pop {@link Language Languages})
+	 * or, if no actions have been performed, the one that was active when the first token was found.
+	 * 
+	 * @param k
+	 *            the index of the token
+	 * @return the {@code k}th token in the lookahead buffer or {@code null} if the buffer holds {@code k} or fewer tokens
+	 */
+	Lookahead<C, T, R, D, L> getLookahead(int k) {
+		if (lookahead == null || lookahead.isEmpty())
+			return null;
+		Lookahead<C, T, R, D, L> first = lookahead.get(0);
+		Language<C, T, R, D, L> expected = first.language;
+		for (int i = 0; i < lookahead.size() && lookahead.get(i).performed; i++) //Only a prefix of the buffer can have been performed
+			expected = lookahead.get(i).afterLanguage;
+		if ((first.from != head && first.start != head) || expected != getLanguage()) {
+			lookahead.clear();
+			return null;
 		}
-		return false;
+		return k < lookahead.size() ? lookahead.get(k) : null;
+	}
+	
+	/**
+	 * @return the number of tokens in the lookahead buffer (this assumes that {@link #getLookahead(int)} was just called)
+	 */
+	int getLookaheadSize() {
+		return lookahead == null ? 0 : lookahead.size();
+	}
+	
+	/**
+	 * Adds a token to the end of the lookahead buffer.
+	 * 
+	 * @param token
+	 *            the token to add
+	 */
+	void addLookahead(Lookahead<C, T, R, D, L> token) {
+		if (lookahead == null)
+			lookahead = new ArrayList<>(4);
+		lookahead.add(token);
+	}
+	
+	/**
+	 * Removes the first token from the lookahead buffer.
+	 */
+	void pollLookahead() {
+		lookahead.remove(0);
+	}
+	
+	/**
+	 * Removes all of the tokens after the first {@code size} tokens from the lookahead buffer.
+	 * 
+	 * @param size
+	 *            the number of tokens to keep
+	 */
+	void truncateLookahead(int size) {
+		if (lookahead != null)
+			while (lookahead.size() > size)
+				lookahead.remove(lookahead.size() - 1);
+	}
+	
+	/**
+	 * Removes all of the tokens from the lookahead buffer.
+	 */
+	void clearLookahead() {
+		if (lookahead != null)
+			lookahead.clear();
 	}
 	
 	/**
@@ -277,6 +591,10 @@ public class LexerState<C extends GenericConsCell<C, T>, T extends ConsType, R e
 	}
 	
 	/**
+	 * <b>Note:</b> the returned {@link Language} is the {@link Language#snapshot() snapshot} that was pushed rather than the
+	 * {@link Language} that was passed to {@link #pushLanguage(Language)}, so it should not be compared by identity with the
+	 * original, and attempting to modify it may throw an {@link UnsupportedOperationException}.
+	 * 
 	 * @return the {@link Language} in use
 	 */
 	public Language<C, T, R, D, L> getLanguage() {
@@ -285,7 +603,8 @@ public class LexerState<C extends GenericConsCell<C, T>, T extends ConsType, R e
 	
 	/**
 	 * Pops the active {@link Language} from the {@link LexerState LexerState's} {@link Language} stack. This effectively reverts to the last-active
-	 * {@link Language}.
+	 * {@link Language}.<br>
+	 * <b>Note:</b> as with {@link #getLanguage()}, the popped {@link Language} is a {@link Language#snapshot() snapshot}.
 	 * 
 	 * @return the popped {@link Language}
 	 */
@@ -295,13 +614,18 @@ public class LexerState<C extends GenericConsCell<C, T>, T extends ConsType, R e
 	
 	/**
 	 * Pushes the {@link Language} onto the {@link LexerState LexerState's} {@link Language} stack. This changes the {@link LexerState LexerState's}
-	 * active {@link Language} while also providing a change history.
+	 * active {@link Language} while also providing a change history.<br>
+	 * The {@link Language#snapshot() snapshot} of {@code language} is pushed so that changes made to {@code language} later
+	 * do not affect the run. Therefore, {@link #getLanguage()} and {@link #popLanguage()} return the snapshot rather than
+	 * {@code language} itself. To check whether a particular {@link Language} is active, compare
+	 * {@code getLanguage() == language.snapshot()} (which only holds if {@code language} has not been modified since it was
+	 * pushed).
 	 * 
 	 * @param language
-	 *            the new {@link Language} to use
+	 *            the new {@link Language} to use. Its {@link Language#snapshot() snapshot} is pushed
 	 */
 	public void pushLanguage(Language<C, T, R, D, L> language) {
-		this.language.push(language);
+		this.language.push(language.snapshot());
 	}
 	
 	/**
@@ -319,18 +643,171 @@ public class LexerState<C extends GenericConsCell<C, T>, T extends ConsType, R e
 	}
 	
 	/**
+	 * The copy shares the {@link Lexer} and the {@link Language#snapshot() Language snapshots} with this
+	 * {@link LexerState} because neither is modified while lexing.<br>
+	 * Only the {@link ConsCell ConsCells} from the {@link #getRoot() root} through {@link #getLast()} are cloned, so cells
+	 * that were linked after them through another {@link LexerState} (such as one from which this was
+	 * {@link #shallowCopy() shallowly copied}) are not included.
+	 * 
 	 * @return a copy of the {@link LexerState} where only the {@link ConsCell ConsCells} are cloned.
+	 * @see #shallowCopy()
 	 */
 	public LexerState<C, T, R, D, L> copy() {
-		LexerState<C, T, R, D, L> copy = new LexerState<>(this, root, last);
+		LexerState<C, T, R, D, L> copy = shallowCopy();
 		if (copy.root != null) {
 			copy.root = copy.root.clone();
-			copy.last = copy.root.getLast();
+			C original = root, cloned = copy.root;
+			for (; original != last && original.getNext() != null; original = original.getNext())
+				cloned = cloned.getNext();
+			copy.last = cloned;
+			while (cloned.getNext() != null) //Drop the clones of the cells after last
+				cloned.getNext().remove();
 		}
-		copy.lexer = copy.lexer.clone();
-		copy.language = new Stack<>();
+		return copy;
+	}
+	
+	/**
+	 * Copies the position, {@link Descender}, depth, and {@link Language} stack of this {@link LexerState} without cloning
+	 * its {@link ConsCell ConsCells}. This takes time proportional to the depth of the {@link Language} stack rather than to
+	 * the amount of output, and the copy is not affected by later changes to the position or {@link Language} stack of this
+	 * {@link LexerState}.<br>
+	 * <b>Note:</b> because the copy shares its {@link ConsCell ConsCells} with this {@link LexerState}, tokens that are
+	 * appended to this {@link LexerState} later are visible through the copy's {@link #getRoot() root}.
+	 * 
+	 * @return a copy of the {@link LexerState} that shares its {@link ConsCell ConsCells} with this {@link LexerState}
+	 * @see #copy()
+	 */
+	public LexerState<C, T, R, D, L> shallowCopy() {
+		LexerState<C, T, R, D, L> copy = new LexerState<>(this, root, last);
+		copy.language = new LanguageStack<>();
 		for (int i = 0; i < language.size(); i++)
-			copy.language.push(language.get(i).clone());
+			copy.language.push(language.get(i).snapshot());
+		copy.base = base;
+		copy.depth = depth;
+		copy.deadline = deadline;
+		copy.matchInput = deadline == null ? input : copy.getCheckedInput(); //The copy gets its own counters
+		copy.recovery = recovery;
+		copy.selection = selection;
 		return copy;
 	}
+	
+	/**
+	 * A token that has been matched but not consumed. Its action is performed at most once, when its cell is first needed.
+	 */
+	static final class Lookahead<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> {
+		final int from, start, end;
+		final Pattern pattern;
+		final MatchResult match;
+		final LexerAction<C, T, R, D, L, MatchResult> action;
+		final Language<C, T, R, D, L> language;
+		boolean performed;
+		C cell;
+		int after;
+		/**
+		 * The {@link Language} that was active after the token's action was performed
+		 */
+		Language<C, T, R, D, L> afterLanguage;
+		
+		/**
+		 * @param from
+		 *            the head position from which the token was found (this can be before ignored input that precedes it)
+		 * @param pattern
+		 *            the {@link Pattern} that matched the token
+		 * @param match
+		 *            the match for the token
+		 * @param action
+		 *            the action that the token's {@link Pattern} maps to
+		 * @param language
+		 *            the {@link Language} that was active when the token was found
+		 */
+		Lookahead(int from, Pattern pattern, MatchResult match, LexerAction<C, T, R, D, L, MatchResult> action, Language<C, T, R, D, L> language) {
+			this.from = from;
+			this.pattern = pattern;
+			start = match.start();
+			end = match.end();
+			this.match = match;
+			this.action = action;
+			this.language = language;
+			performed = false;
+			cell = null;
+			after = end;
+			afterLanguage = language;
+		}
+	}
+	
+	/**
+	 * An unsynchronized stack of {@link Language Languages} that is shared between a {@link LexerState} and the
+	 * {@link LexerState LexerStates} produced by {@link LexerState#descend(Descender)}.
+	 */
+	private static final class LanguageStack<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> {
+		private final Stack<Language<C, T, R, D, L>> shared;
+		private Language<C, T, R, D, L>[] languages;
+		private int size;
+		
+		@SuppressWarnings("unchecked")
+		LanguageStack() {
+			shared = null;
+			languages = (Language<C, T, R, D, L>[]) new Language[4];
+			size = 0;
+		}
+		
+		/**
+		 * Constructs a {@link LanguageStack} that reads and writes through to the given {@link Stack}.
+		 */
+		LanguageStack(Stack<Language<C, T, R, D, L>> shared) {
+			this.shared = shared;
+			languages = null;
+			size = 0;
+		}
+		
+		void push(Language<C, T, R, D, L> language) {
+			if (shared != null) {
+				shared.push(language);
+				return;
+			}
+			if (size == languages.length)
+				languages = Arrays.copyOf(languages, size * 2);
+			languages[size++] = language;
+		}
+		
+		Language<C, T, R, D, L> pop() {
+			if (shared != null)
+				return shared.pop();
+			if (size == 0)
+				throw new EmptyStackException();
+			Language<C, T, R, D, L> out = languages[--size];
+			languages[size] = null;
+			return out;
+		}
+		
+		Language<C, T, R, D, L> peek() {
+			if (shared != null)
+				return shared.peek();
+			if (size == 0)
+				throw new EmptyStackException();
+			return languages[size - 1];
+		}
+		
+		Language<C, T, R, D, L> get(int index) {
+			return shared != null ? shared.get(index) : languages[index];
+		}
+		
+		int size() {
+			return shared != null ? shared.size() : size;
+		}
+		
+		@SuppressWarnings("unchecked")
+		Language<C, T, R, D, L>[] toArray() {
+			return shared != null ? shared.toArray((Language<C, T, R, D, L>[]) new Language[shared.size()]) : Arrays.copyOf(languages, size);
+		}
+		
+		void clear() {
+			if (shared != null) {
+				shared.clear();
+				return;
+			}
+			Arrays.fill(languages, 0, size, null);
+			size = 0;
+		}
+	}
 }
@@ -0,0 +1,162 @@
+package toberumono.lexer.base;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import toberumono.lexer.errors.MatchBudgetExceededException;
+
+/**
+ * Bounds the amount of work that a single {@link Pattern} may do while the {@link Lexer} looks for a match at one position.<br>
+ * The work is measured in reads from the input (calls to {@link CharSequence#charAt(int)} made by the
+ * {@link java.util.regex.Matcher Matcher}), which grows with the amount of backtracking that a {@link Pattern} does. When a
+ * {@link Pattern} exceeds the limit, the {@link MatchBudget} records the event and, depending on its {@link Policy}, the
+ * {@link Lexer} either treats that {@link Pattern} as not matching at that position or throws a
+ * {@link MatchBudgetExceededException}.<br>
+ * A {@link MatchBudget} is thread-safe, and its counts cover every run of every {@link Lexer} that uses it.
+ * 
+ * @author Toberumono
+ * @see Lexer#setMatchBudget(MatchBudget)
+ */
+public class MatchBudget {
+	private final long limit;
+	private final Policy policy;
+	private final Listener listener;
+	private final ConcurrentHashMap<String, LongAdder> exceeded;
+	private final LongAdder total;
+	
+	/**
+	 * What a {@link Lexer} does when a {@link Pattern} exceeds its {@link MatchBudget}.
+	 * 
+	 * @author Toberumono
+	 */
+	public static enum Policy {
+		/**
+		 * The {@link Pattern} is treated as though it did not match at that position, and lexing continues
+		 */
+		SKIP,
+		/**
+		 * The {@link Lexer} throws a {@link MatchBudgetExceededException}
+		 */
+		FAIL
+	}
+	
+	/**
+	 * Receives every over-budget event recorded by a {@link MatchBudget}. This is called on the lexing thread, so
+	 * implementations should be quick and thread-safe.
+	 * 
+	 * @author Toberumono
+	 */
+	@FunctionalInterface
+	public static interface Listener {
+		
+		/**
+		 * Called when a {@link Pattern} exceeds its {@link MatchBudget}.
+		 * 
+		 * @param name
+		 *            the name of the {@link Pattern} in the active {@link Language} (see {@link Language#getNames()})
+		 * @param pattern
+		 *            the {@link Pattern} that exceeded the {@link MatchBudget}
+		 * @param input
+		 *            the input being lexed
+		 * @param position
+		 *            the position at which the {@link Pattern} was being matched
+		 */
+		public void exceeded(String name, Pattern pattern, String input, int position);
+	}
+	
+	/**
+	 * Constructs a {@link MatchBudget} without a {@link Listener}.
+	 * 
+	 * @param limit
+	 *            the maximum number of reads from the input that a single {@link Pattern} may make at one position
+	 * @param policy
+	 *            the {@link Policy} to apply when a {@link Pattern} exceeds the limit
+	 */
+	public MatchBudget(long limit, Policy policy) {
+		this(limit, policy, null);
+	}
+	
+	/**
+	 * Constructs a {@link MatchBudget}.
+	 * 
+	 * @param limit
+	 *            the maximum number of reads from the input that a single {@link Pattern} may make at one position
+	 * @param policy
+	 *            the {@link Policy} to apply when a {@link Pattern} exceeds the limit
+	 * @param listener
+	 *            a {@link Listener} that is notified of every over-budget event (this may be {@code null})
+	 */
+	public MatchBudget(long limit, Policy policy, Listener listener) {
+		if (limit <= 0)
+			throw new IllegalArgumentException("The limit of a MatchBudget must be positive.");
+		if (policy == null)
+			throw new NullPointerException("The policy of a MatchBudget cannot be null.");
+		this.limit = limit;
+		this.policy = policy;
+		this.listener = listener;
+		exceeded = new ConcurrentHashMap<>();
+		total = new LongAdder();
+	}
+	
+	/**
+	 * @return the maximum number of reads from the input that a single {@link Pattern} may make at one position
+	 */
+	public long getLimit() {
+		return limit;
+	}
+	
+	/**
+	 * @return the {@link Policy} applied when a {@link Pattern} exceeds the limit
+	 */
+	public Policy getPolicy() {
+		return policy;
+	}
+	
+	/**
+	 * Records an over-budget event and forwards it to the {@link Listener} (if any). This is called by the {@link Lexer}.
+	 * 
+	 * @param name
+	 *            the name of the {@link Pattern} in the active {@link Language}
+	 * @param pattern
+	 *            the {@link Pattern} that exceeded the {@link MatchBudget}
+	 * @param input
+	 *            the input being lexed
+	 * @param position
+	 *            the position at which the {@link Pattern} was being matched
+	 */
+	public void record(String name, Pattern pattern, String input, int position) {
+		exceeded.computeIfAbsent(name, k -> new LongAdder()).increment();
+		total.increment();
+		if (listener != null)
+			listener.exceeded(name, pattern, input, position);
+	}
+	
+	/**
+	 * @return the total number of over-budget events that have been recorded
+	 */
+	public long getExceededCount() {
+		return total.sum();
+	}
+	
+	/**
+	 * @return a copy of the number of over-budget events that have been recorded for each {@link Pattern} name
+	 */
+	public Map<String, Long> getExceededCounts() {
+		Map<String, Long> out = new LinkedHashMap<>();
+		for (Map.Entry<String, LongAdder> e : exceeded.entrySet())
+			out.put(e.getKey(), e.getValue().sum());
+		return Collections.unmodifiableMap(out);
+	}
+	
+	/**
+	 * Clears the recorded counts.
+	 */
+	public void reset() {
+		exceeded.clear();
+		total.reset();
+	}
+}
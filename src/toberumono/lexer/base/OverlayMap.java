@@ -0,0 +1,289 @@
+package toberumono.lexer.base;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link Map} that stores only its differences from a shared base {@link Map}, which it never modifies. Entries that are
+ * put with a key that is in the base {@link Map} shadow the base's entries (and keep their positions in the iteration
+ * order), and entries with new keys are iterated over after the base's entries.<br>
+ * The base {@link Map} must not be modified while the {@link OverlayMap} is in use.
+ * 
+ * @author Toberumono
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type of the values
+ * @see LayeredLanguage
+ */
+final class OverlayMap<K, V> extends AbstractMap<K, V> implements Cloneable {
+	private final Map<K, V> base;
+	private Map<K, V> added;
+	private Set<Object> removed; //Only ever contains keys in base that are not in added
+	
+	OverlayMap(Map<K, V> base) {
+		this(base, new LinkedHashMap<>(), new HashSet<>());
+	}
+	
+	private OverlayMap(Map<K, V> base, Map<K, V> added, Set<Object> removed) {
+		this.base = base;
+		this.added = added;
+		this.removed = removed;
+	}
+	
+	@Override
+	public int size() {
+		int size = base.size() - removed.size();
+		for (K key : added.keySet())
+			if (!base.containsKey(key))
+				size++;
+		return size;
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return added.containsKey(key) || (!removed.contains(key) && base.containsKey(key));
+	}
+	
+	@Override
+	public V get(Object key) {
+		if (added.containsKey(key))
+			return added.get(key);
+		return removed.contains(key) ? null : base.get(key);
+	}
+	
+	@Override
+	public V put(K key, V value) {
+		V out = get(key);
+		added.put(key, value);
+		removed.remove(key);
+		return out;
+	}
+	
+	@Override
+	public V remove(Object key) {
+		V out = get(key);
+		added.remove(key);
+		if (base.containsKey(key))
+			removed.add(key);
+		return out;
+	}
+	
+	@Override
+	public void clear() {
+		added.clear();
+		removed.addAll(base.keySet());
+	}
+	
+	/**
+	 * Clones the differences from the base {@link Map}. This takes time proportional to the number of differences rather
+	 * than to {@link #size()}.
+	 */
+	@Override
+	public OverlayMap<K, V> clone() {
+		return new OverlayMap<>(base, new LinkedHashMap<>(added), new HashSet<>(removed));
+	}
+	
+	/**
+	 * Produces an immutable copy of the {@link OverlayMap} that shares its base {@link Map}. This takes time proportional to
+	 * the number of differences rather than to {@link #size()}.
+	 * 
+	 * @return an immutable copy of the {@link OverlayMap}
+	 */
+	Map<K, V> freeze() {
+		return new Frozen<>(this);
+	}
+	
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new OverlayIterator();
+			}
+			
+			@Override
+			public int size() {
+				return OverlayMap.this.size();
+			}
+		};
+	}
+	
+	/**
+	 * Iterates over the entries in the base {@link Map} (skipping removed entries and substituting shadowed ones) and then
+	 * over the added entries with new keys.
+	 */
+	private class OverlayIterator implements Iterator<Map.Entry<K, V>> {
+		private final Iterator<Map.Entry<K, V>> baseEntries = base.entrySet().iterator(), addedEntries = added.entrySet().iterator();
+		private final boolean unchanged = added.isEmpty() && removed.isEmpty();
+		private Map.Entry<K, V> next = advance();
+		
+		private Map.Entry<K, V> advance() {
+			while (baseEntries.hasNext()) {
+				Map.Entry<K, V> entry = baseEntries.next();
+				if (unchanged)
+					return entry;
+				if (removed.contains(entry.getKey()))
+					continue;
+				if (added.containsKey(entry.getKey()))
+					return new SimpleImmutableEntry<>(entry.getKey(), added.get(entry.getKey()));
+				return entry;
+			}
+			while (addedEntries.hasNext()) {
+				Map.Entry<K, V> entry = addedEntries.next();
+				if (!base.containsKey(entry.getKey()))
+					return entry;
+			}
+			return null;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+		
+		@Override
+		public Map.Entry<K, V> next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			Map.Entry<K, V> out = next;
+			next = advance();
+			return out;
+		}
+	}
+	
+	/**
+	 * An immutable copy of an {@link OverlayMap} in which the differences are split by whether they shadow an entry in the
+	 * base {@link Map}. Iterating over its keys only checks the removed keys (if there are any), so a snapshot with few
+	 * changes can be iterated over almost as quickly as its base {@link Map}.
+	 */
+	private static final class Frozen<K, V> extends AbstractMap<K, V> {
+		private final Map<K, V> base, shadowed, appended;
+		private final Set<Object> removed;
+		private final int size;
+		
+		Frozen(OverlayMap<K, V> overlay) {
+			base = overlay.base;
+			removed = new HashSet<>(overlay.removed);
+			shadowed = new HashMap<>();
+			appended = new LinkedHashMap<>();
+			for (Map.Entry<K, V> entry : overlay.added.entrySet())
+				(base.containsKey(entry.getKey()) ? shadowed : appended).put(entry.getKey(), entry.getValue());
+			size = base.size() - removed.size() + appended.size();
+		}
+		
+		@Override
+		public int size() {
+			return size;
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			if (base.containsKey(key))
+				return removed.isEmpty() || !removed.contains(key);
+			return appended.containsKey(key);
+		}
+		
+		@Override
+		public V get(Object key) {
+			if (!shadowed.isEmpty() && shadowed.containsKey(key))
+				return shadowed.get(key);
+			V out = base.get(key);
+			if (out != null || base.containsKey(key)) //Values can be null (e.g. the actions of ignores)
+				return removed.isEmpty() || !removed.contains(key) ? out : null;
+			return appended.get(key);
+		}
+		
+		@Override
+		public Set<K> keySet() {
+			return new AbstractSet<K>() {
+				@Override
+				public Iterator<K> iterator() {
+					return new Iterator<K>() {
+						private final Iterator<K> baseKeys = base.keySet().iterator(), appendedKeys = appended.keySet().iterator();
+						private K next = advance();
+						
+						private K advance() {
+							while (baseKeys.hasNext()) {
+								K key = baseKeys.next();
+								if (removed.isEmpty() || !removed.contains(key))
+									return key;
+							}
+							return appendedKeys.hasNext() ? appendedKeys.next() : null;
+						}
+						
+						@Override
+						public boolean hasNext() {
+							return next != null;
+						}
+						
+						@Override
+						public K next() {
+							if (next == null)
+								throw new NoSuchElementException();
+							K out = next;
+							next = advance();
+							return out;
+						}
+					};
+				}
+				
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+		
+		@Override
+		public Set<Map.Entry<K, V>> entrySet() {
+			return new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new Iterator<Map.Entry<K, V>>() {
+						private final Iterator<Map.Entry<K, V>> baseEntries = base.entrySet().iterator(), appendedEntries = appended.entrySet().iterator();
+						private Map.Entry<K, V> next = advance();
+						
+						private Map.Entry<K, V> advance() {
+							while (baseEntries.hasNext()) {
+								Map.Entry<K, V> entry = baseEntries.next();
+								if (!removed.isEmpty() && removed.contains(entry.getKey()))
+									continue;
+								if (!shadowed.isEmpty() && shadowed.containsKey(entry.getKey()))
+									return new SimpleImmutableEntry<>(entry.getKey(), shadowed.get(entry.getKey()));
+								return entry;
+							}
+							return appendedEntries.hasNext() ? appendedEntries.next() : null;
+						}
+						
+						@Override
+						public boolean hasNext() {
+							return next != null;
+						}
+						
+						@Override
+						public Map.Entry<K, V> next() {
+							if (next == null)
+								throw new NoSuchElementException();
+							Map.Entry<K, V> out = next;
+							next = advance();
+							return out;
+						}
+					};
+				}
+				
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+	}
+}
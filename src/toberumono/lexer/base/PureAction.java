@@ -0,0 +1,57 @@
+package toberumono.lexer.base;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * A marker interface for {@link LexerAction LexerActions} that are free of side effects. The result of a
+ * {@link PureAction} must depend only on the input and the match, and it must neither modify the {@link LexerState} nor
+ * depend on the order in which it is performed relative to other actions. Because of this, {@link PureAction PureActions}
+ * can be performed concurrently by {@link Lexer#lexTwoPhase(String, java.util.concurrent.ForkJoinPool)}.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ * @param <O>
+ *            the type of the matched data
+ */
+@FunctionalInterface
+public interface PureAction<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>, O>
+		extends LexerAction<C, T, R, D, L, O> {
+	
+	/**
+	 * Marks {@code action} as a {@link PureAction} if {@code pure} is {@code true}. This is for actions that call
+	 * user-supplied code, such as converters, which only the user can declare to be free of side effects.
+	 * 
+	 * @param <C>
+	 *            the implementation of {@link ConsCell} to be used
+	 * @param <T>
+	 *            the implementation of {@link ConsType} to be used
+	 * @param <R>
+	 *            the implementation of {@link Rule} to be used
+	 * @param <D>
+	 *            the implementation of {@link Descender} to be used
+	 * @param <L>
+	 *            the implementation of {@link Lexer} to be used
+	 * @param <O>
+	 *            the type of the matched data
+	 * @param action
+	 *            the {@link LexerAction} to mark
+	 * @param pure
+	 *            whether {@code action} is free of side effects
+	 * @return a {@link PureAction} that performs {@code action} if {@code pure} is {@code true}, otherwise {@code action}
+	 */
+	public static <C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>, O> LexerAction<C, T, R, D, L, O> mark(
+			LexerAction<C, T, R, D, L, O> action, boolean pure) {
+		return pure && !(action instanceof PureAction) ? (PureAction<C, T, R, D, L, O>) action::perform : action;
+	}
+}
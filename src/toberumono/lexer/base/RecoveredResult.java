@@ -0,0 +1,48 @@
+package toberumono.lexer.base;
+
+import java.util.Collections;
+import java.util.List;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * The result of lexing an input in recovery mode: the tokens that were produced and a {@link LexerDiagnostic} for each error
+ * that was skipped over.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @see Lexer#lexRecovering(String, ConsType, java.util.regex.Pattern)
+ */
+public final class RecoveredResult<C extends GenericConsCell<C, ?>> {
+	private final C root;
+	private final List<LexerDiagnostic> diagnostics;
+	
+	RecoveredResult(C root, List<LexerDiagnostic> diagnostics) {
+		this.root = root;
+		this.diagnostics = Collections.unmodifiableList(diagnostics);
+	}
+	
+	/**
+	 * @return the root of the tokens that were produced or {@code null} if none were produced
+	 */
+	public C getRoot() {
+		return root;
+	}
+	
+	/**
+	 * @return the {@link LexerDiagnostic LexerDiagnostics} in the order in which their errors were encountered
+	 */
+	public List<LexerDiagnostic> getDiagnostics() {
+		return diagnostics;
+	}
+	
+	/**
+	 * @return {@code true} if any errors were encountered
+	 */
+	public boolean hasErrors() {
+		return !diagnostics.isEmpty();
+	}
+}
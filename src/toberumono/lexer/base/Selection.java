@@ -0,0 +1,63 @@
+package toberumono.lexer.base;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The names of the {@link Rule Rules} and {@link Descender Descenders} whose tokens are kept by a run of
+ * {@link Lexer#lexSelective(String, Collection)}, and the {@link Pattern Patterns} that they translate to in each
+ * {@link Language} that the run encounters. This is shared by all of the {@link LexerState LexerStates} in the run.
+ * 
+ * @author Toberumono
+ */
+final class Selection {
+	private final Set<String> keep;
+	private final Map<Language<?, ?, ?, ?, ?>, Filter> filters;
+	
+	Selection(Collection<String> keep) {
+		this.keep = new HashSet<>(keep);
+		filters = new IdentityHashMap<>();
+	}
+	
+	/**
+	 * @param language
+	 *            the active {@link Language}
+	 * @return the {@link Filter} for {@code language}
+	 */
+	synchronized Filter getFilter(Language<?, ?, ?, ?, ?> language) {
+		Filter filter = filters.get(language);
+		if (filter == null)
+			filters.put(language, filter = new Filter(language, keep));
+		return filter;
+	}
+	
+	/**
+	 * The {@link Pattern Patterns} in a single {@link Language} whose tokens are not kept.
+	 */
+	static final class Filter {
+		/**
+		 * The {@link Pattern Patterns} of the {@link Rule Rules} that are not kept. Their actions are not performed.
+		 */
+		final Set<Pattern> dropped;
+		/**
+		 * The open {@link Pattern Patterns} of the {@link Descender Descenders} that are not kept. Their descents are lexed,
+		 * but their close actions' results are discarded.
+		 */
+		final Set<Pattern> discarded;
+		
+		private Filter(Language<?, ?, ?, ?, ?> language, Set<String> keep) {
+			dropped = new HashSet<>();
+			discarded = new HashSet<>();
+			for (Map.Entry<String, ? extends Rule<?, ?, ?, ?, ?>> rule : language.getRules().entrySet())
+				if (!keep.contains(rule.getKey()))
+					dropped.add(rule.getValue().getPattern());
+			for (Map.Entry<String, ? extends Descender<?, ?, ?, ?, ?>> descender : language.getDescenders().entrySet())
+				if (!keep.contains(descender.getKey()))
+					discarded.add(descender.getValue().getOpenPattern());
+		}
+	}
+}
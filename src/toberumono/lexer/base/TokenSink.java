@@ -0,0 +1,67 @@
+package toberumono.lexer.base;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * A destination for the token records produced by {@link Lexer#lexInto(String, TokenSink)}.<br>
+ * Each token is recorded as a type id (assigned by {@link #getTypes()}), the index at which it starts, the index at which it
+ * ends, and the index of the {@link Descender} token that contains it (or {@code -1} for top-level tokens). Tokens are
+ * recorded in the order in which they appear in the input, so every {@link Descender} token is immediately followed by its
+ * contents.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ * @see TokenTape
+ * @see TokenStore
+ */
+public interface TokenSink<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> {
+	
+	/**
+	 * @return the {@link TokenTypes} that assigns the type ids for the {@link TokenSink}
+	 */
+	public TokenTypes<C, T, R, D, L> getTypes();
+	
+	/**
+	 * Records a token. The end of a {@link Descender} token is not known when it is recorded and is set later via
+	 * {@link #close(int, int, boolean)}.
+	 * 
+	 * @param type
+	 *            the type id of the token
+	 * @param start
+	 *            the index at which the token starts
+	 * @param end
+	 *            the index at which the token ends (exclusive) or {@code -1} for {@link Descender} tokens
+	 * @param parent
+	 *            the index of the {@link Descender} token that contains the token or {@code -1}
+	 * @return the index of the token
+	 */
+	public int add(int type, int start, int end, int parent);
+	
+	/**
+	 * Records the end of a {@link Descender} token.
+	 * 
+	 * @param index
+	 *            the index of the {@link Descender} token
+	 * @param end
+	 *            the index at which its close token ends (exclusive) or the length of the input if it was never closed
+	 * @param matched
+	 *            {@code false} if the end of the input was reached before the {@link Descender} was closed
+	 */
+	public void close(int index, int end, boolean matched);
+	
+	/**
+	 * Called once the entire input has been recorded. The default implementation does nothing.
+	 */
+	public default void finish() {}
+}
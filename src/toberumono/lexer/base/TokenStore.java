@@ -0,0 +1,270 @@
+package toberumono.lexer.base;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * A {@link TokenSink} that keeps its token records outside of the Java heap so that the number of tokens that can be
+ * recorded is not bounded by the maximum heap size.<br>
+ * Records are written into fixed-size direct {@link ByteBuffer ByteBuffers} until they take up more than the configured
+ * spill threshold or the JVM's direct memory limit ({@code -XX:MaxDirectMemorySize}) is reached, after which further
+ * records are written into a memory-mapped temporary file. The records are read back with a {@link Cursor}.<br>
+ * Because {@link TokenSink#add(int, int, int, int)} cannot throw checked exceptions, a failure to create or map the
+ * temporary file is thrown from it as an {@link UncheckedIOException}. {@link Lexer#lexToStore(String, long)} unwraps it
+ * and throws the underlying {@link IOException}.<br>
+ * <b>Note:</b> a {@link TokenStore} must be {@link #close() closed} to release its temporary file.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ * @see Lexer#lexToStore(String, long)
+ */
+public class TokenStore<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>>
+		implements TokenSink<C, T, R, D, L>, Closeable {
+	private static final int RECORD_SIZE = 16, RECORDS_PER_CHUNK = 1 << 16, CHUNK_SIZE = RECORD_SIZE * RECORDS_PER_CHUNK;
+	private static final int TYPE = 0, START = 4, END = 8, PARENT = 12;
+	
+	private final String input;
+	private final long spillThreshold;
+	private final TokenTypes<C, T, R, D, L> types;
+	private final List<ByteBuffer> chunks;
+	private FileChannel spill;
+	private int spilledChunks;
+	private int size;
+	
+	/**
+	 * Constructs an empty {@link TokenStore} for the given input.
+	 * 
+	 * @param input
+	 *            the input whose tokens will be recorded
+	 * @param spillThreshold
+	 *            the number of bytes of token records to keep in direct memory before spilling to a temporary file
+	 */
+	public TokenStore(String input, long spillThreshold) {
+		if (spillThreshold < 0)
+			throw new IllegalArgumentException("The spill threshold cannot be negative.");
+		this.input = input;
+		this.spillThreshold = spillThreshold;
+		types = new TokenTypes<>();
+		chunks = new ArrayList<>();
+		spill = null;
+		spilledChunks = 0;
+		size = 0;
+	}
+	
+	/**
+	 * @return the input whose tokens are recorded
+	 */
+	public String getInput() {
+		return input;
+	}
+	
+	/**
+	 * @return the number of tokens (at all depths) in the {@link TokenStore}
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return {@code true} if some of the records have been spilled to a temporary file
+	 */
+	public boolean isSpilled() {
+		return spill != null;
+	}
+	
+	@Override
+	public TokenTypes<C, T, R, D, L> getTypes() {
+		return types;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the record had to be spilled and the temporary file could not be created or mapped
+	 */
+	@Override
+	public int add(int type, int start, int end, int parent) {
+		if (size == Integer.MAX_VALUE)
+			throw new IllegalStateException("A TokenStore cannot hold more than " + Integer.MAX_VALUE + " tokens.");
+		if (size % RECORDS_PER_CHUNK == 0)
+			chunks.add(allocateChunk());
+		ByteBuffer chunk = chunks.get(chunks.size() - 1);
+		int offset = (size % RECORDS_PER_CHUNK) * RECORD_SIZE;
+		chunk.putInt(offset + TYPE, type).putInt(offset + START, start).putInt(offset + END, end).putInt(offset + PARENT, parent);
+		return size++;
+	}
+	
+	@Override
+	public void close(int index, int end, boolean matched) {
+		//Descenders that were never closed are marked by storing the bitwise complement of their end
+		chunks.get(index / RECORDS_PER_CHUNK).putInt((index % RECORDS_PER_CHUNK) * RECORD_SIZE + END, matched ? end : ~end);
+	}
+	
+	private ByteBuffer allocateChunk() {
+		if (spill == null && (long) chunks.size() * CHUNK_SIZE < spillThreshold) {
+			try {
+				return ByteBuffer.allocateDirect(CHUNK_SIZE).order(ByteOrder.nativeOrder());
+			}
+			catch (OutOfMemoryError e) {
+				//The direct memory limit was reached before the spill threshold, so the records are spilled early
+			}
+		}
+		try {
+			if (spill == null) {
+				Path file = Files.createTempFile("tokens", ".store");
+				spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+			}
+			return spill.map(FileChannel.MapMode.READ_WRITE, (long) spilledChunks++ * CHUNK_SIZE, CHUNK_SIZE).order(ByteOrder.nativeOrder());
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * @return a new {@link Cursor} positioned before the first token
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+	
+	/**
+	 * Closes and deletes the temporary file (if any) and releases the references to the record buffers. The direct memory
+	 * is returned once the buffers are garbage collected.
+	 * 
+	 * @throws IOException
+	 *             if the temporary file could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		chunks.clear();
+		size = 0;
+		if (spill != null) {
+			spill.close();
+			spill = null;
+		}
+	}
+	
+	/**
+	 * Reads the records in a {@link TokenStore}. A {@link Cursor} starts positioned before the first token.
+	 * 
+	 * @author Toberumono
+	 */
+	public class Cursor {
+		private int index;
+		private ByteBuffer chunk;
+		private int offset;
+		
+		Cursor() {
+			index = -1;
+		}
+		
+		/**
+		 * Advances the {@link Cursor} to the next token.
+		 * 
+		 * @return {@code true} if there was another token
+		 */
+		public boolean next() {
+			if (index + 1 >= size)
+				return false;
+			seek(index + 1);
+			return true;
+		}
+		
+		/**
+		 * Moves the {@link Cursor} to the token at the given index.
+		 * 
+		 * @param index
+		 *            the index of a token
+		 */
+		public void seek(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			this.index = index;
+			chunk = chunks.get(index / RECORDS_PER_CHUNK);
+			offset = (index % RECORDS_PER_CHUNK) * RECORD_SIZE;
+		}
+		
+		/**
+		 * @return the index of the current token
+		 */
+		public int getIndex() {
+			return index;
+		}
+		
+		/**
+		 * @return the type id of the current token
+		 * @see TokenStore#getTypes()
+		 */
+		public int getType() {
+			return chunk.getInt(offset + TYPE);
+		}
+		
+		/**
+		 * @return the index in the input at which the current token starts
+		 */
+		public int getStart() {
+			return chunk.getInt(offset + START);
+		}
+		
+		/**
+		 * @return the index in the input at which the current token ends (exclusive)
+		 */
+		public int getEnd() {
+			int end = chunk.getInt(offset + END);
+			return end < 0 ? ~end : end;
+		}
+		
+		/**
+		 * @return the index of the {@link Descender} token that contains the current token or {@code -1}
+		 */
+		public int getParent() {
+			return chunk.getInt(offset + PARENT);
+		}
+		
+		/**
+		 * @return {@code true} if the current token was produced by a {@link Descender}
+		 */
+		public boolean isDescender() {
+			return types.getDescender(getType()) != null;
+		}
+		
+		/**
+		 * @return {@code true} if the current token was produced by a {@link Descender} that was still open at the end of
+		 *         the input
+		 */
+		public boolean isUnclosed() {
+			return chunk.getInt(offset + END) < 0;
+		}
+		
+		/**
+		 * @return the part of the input that the current token covers
+		 */
+		public String getText() {
+			return input.substring(getStart(), getEnd());
+		}
+	}
+}
@@ -0,0 +1,360 @@
+package toberumono.lexer.base;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+
+import toberumono.lexer.errors.LexerException;
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * A compact, columnar, on-heap {@link TokenSink} produced by {@link Lexer#lexToTape(String)}.<br>
+ * Each token is stored as four {@code int} values: a type id, the index at which it starts, the index at which it ends, and
+ * the index of the {@link Descender} token that contains it (or {@code -1} for top-level tokens). Tokens are stored in the
+ * order in which they appear in the input, so every {@link Descender} token is immediately followed by its contents.<br>
+ * {@link ConsCell ConsCells} are only produced when they are requested via {@link #getCell(int)} or {@link #getRoot()}, at
+ * which point the relevant {@link Rule} actions and {@link Descender} close actions are run. {@link #getRoot(ForkJoinPool)}
+ * performs the actions that are {@link PureAction PureActions} in parallel.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ */
+public class TokenTape<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>>
+		implements TokenSink<C, T, R, D, L> {
+	private final L lexer;
+	private final String input;
+	private final TokenTypes<C, T, R, D, L> types;
+	private final BitSet unclosed;
+	private int size;
+	private int[] typeColumn, startColumn, endColumn, parentColumn;
+	
+	TokenTape(L lexer, String input, int capacity) {
+		this.lexer = lexer;
+		this.input = input;
+		types = new TokenTypes<>();
+		unclosed = new BitSet();
+		size = 0;
+		capacity = Math.max(capacity, 16);
+		typeColumn = new int[capacity];
+		startColumn = new int[capacity];
+		endColumn = new int[capacity];
+		parentColumn = new int[capacity];
+	}
+	
+	/**
+	 * @return the input that was lexed
+	 */
+	public String getInput() {
+		return input;
+	}
+	
+	/**
+	 * @return the number of tokens (at all depths) in the {@link TokenTape}
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a token
+	 * @return the type id of the token
+	 * @see #getTypes()
+	 */
+	public int getType(int index) {
+		return typeColumn[checkIndex(index)];
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a token
+	 * @return the index in the input at which the token starts
+	 */
+	public int getStart(int index) {
+		return startColumn[checkIndex(index)];
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a token
+	 * @return the index in the input at which the token ends (exclusive). For {@link Descender} tokens, this is the end of
+	 *         the close token
+	 */
+	public int getEnd(int index) {
+		return endColumn[checkIndex(index)];
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a token
+	 * @return the index of the {@link Descender} token that contains the token or {@code -1} if it is a top-level token
+	 */
+	public int getParent(int index) {
+		return parentColumn[checkIndex(index)];
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a token
+	 * @return the number of {@link Descender} tokens that contain the token
+	 */
+	public int getDepth(int index) {
+		int depth = 0;
+		for (int parent = getParent(index); parent != -1; parent = parentColumn[parent])
+			depth++;
+		return depth;
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a token
+	 * @return the part of the input that the token covers
+	 */
+	public String getText(int index) {
+		return input.substring(getStart(index), getEnd(index));
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a token
+	 * @return {@code true} if the token was produced by a {@link Descender}
+	 */
+	public boolean isDescender(int index) {
+		return types.getDescender(getType(index)) != null;
+	}
+	
+	/**
+	 * @param index
+	 *            the index of a token
+	 * @return the index of the next token with the same parent or {@link #size()} if there is no such token
+	 */
+	public int getNextSibling(int index) {
+		int parent = getParent(index), next = index + 1;
+		while (next < size && parentColumn[next] >= index) //Everything in the subtree of index has a parent at or after index
+			next++;
+		return next < size && parentColumn[next] == parent ? next : size;
+	}
+	
+	@Override
+	public TokenTypes<C, T, R, D, L> getTypes() {
+		return types;
+	}
+	
+	/**
+	 * Produces the {@link ConsCell ConsCells} for a single token. If the token was produced by a {@link Descender}, the
+	 * {@link ConsCell ConsCells} for its contents are produced as well.<br>
+	 * <b>Note:</b> every call produces new {@link ConsCell ConsCells}.
+	 * 
+	 * @param index
+	 *            the index of a token
+	 * @return the {@link ConsCell ConsCells} produced by the token's action
+	 * @throws LexerException
+	 *             if the token's action throws one
+	 */
+	public C getCell(int index) throws LexerException {
+		return assemble(checkIndex(index), null);
+	}
+	
+	/**
+	 * Produces the {@link ConsCell ConsCells} for a single token or, if {@code index} is {@code -1}, for every top-level
+	 * token, using the results in {@code performed} for tokens whose actions are {@link PureAction PureActions} if it is not
+	 * {@code null}.<br>
+	 * As in {@link Lexer#lex(String)}, the actions of the tokens in a descent are performed on the {@link LexerState} into
+	 * which the descent's cells are appended, and the {@link Descender Descender's} close action is performed on the
+	 * {@link Language} stack that its open action produced.<br>
+	 * This keeps its own stack of the open {@link Descender} tokens so that deeply nested input cannot overflow the call
+	 * stack. Because tokens are stored in preorder, a token that is not a child of the innermost open {@link Descender} token
+	 * comes after all of that token's contents.
+	 */
+	private C assemble(int index, Object[] performed) throws LexerException {
+		if (index != -1 && types.getDescender(typeColumn[index]) == null)
+			return getLeaf(index, enclosing(parentColumn[index]), performed);
+		Deque<LexerState<C, T, R, D, L>> states = new ArrayDeque<>();
+		int[] open = new int[16];
+		int depth = 0;
+		open[depth] = index;
+		states.push(index == -1 ? enclosing(-1) : descend(index));
+		for (int i = index + 1;; i++) {
+			while (i >= size || parentColumn[i] != open[depth]) {
+				LexerState<C, T, R, D, L> state = states.pop();
+				if (open[depth] == -1)
+					return state.getRoot();
+				state.setHead(endColumn[open[depth]]);
+				//This mirrors Lexer.lex, which returns the contents of a Descender that is still open at the end of the input
+				C cell = unclosed.get(open[depth]) ? state.getRoot() : state.getDescender().getCloseAction().perform(lexer, state, state.getRoot());
+				if (depth-- == 0)
+					return cell;
+				if (cell != null)
+					states.peek().appendMatch(cell);
+			}
+			if (types.getDescender(typeColumn[i]) != null) {
+				if (++depth == open.length)
+					open = Arrays.copyOf(open, depth * 2);
+				open[depth] = i;
+				states.push(descend(i));
+				continue;
+			}
+			C cell = getLeaf(i, states.peek(), performed);
+			if (cell != null)
+				states.peek().appendMatch(cell);
+		}
+	}
+	
+	/**
+	 * @return a {@link LexerState} into which the contents of the {@link Descender} token at {@code index} can be appended.
+	 *         Its {@link Language} stack is the one that the {@link Descender Descender's} open action produced
+	 */
+	private LexerState<C, T, R, D, L> descend(int index) {
+		int type = typeColumn[index];
+		Language<C, T, R, D, L>[] languages = types.getLanguages(type);
+		if (languages == null) //The TokenTypes were filled in by something other than Lexer.lexInto
+			return new LexerState<>(input, endColumn[index], types.getDescender(type), lexer, types.getLanguage(type));
+		return new LexerState<>(input, endColumn[index], types.getDescender(type), lexer, languages);
+	}
+	
+	/**
+	 * @return a {@link LexerState} for the tokens whose parent is {@code parent} ({@code -1} for top-level tokens)
+	 */
+	private LexerState<C, T, R, D, L> enclosing(int parent) {
+		return parent == -1 ? new LexerState<>(input, 0, null, lexer, types.getLanguage(typeColumn[0])) : descend(parent);
+	}
+	
+	/**
+	 * Produces the {@link ConsCell ConsCells} for a token that was not produced by a {@link Descender}.
+	 */
+	@SuppressWarnings("unchecked")
+	private C getLeaf(int index, LexerState<C, T, R, D, L> state, Object[] performed) throws LexerException {
+		return performed != null && types.getAction(typeColumn[index]) instanceof PureAction ? (C) performed[index] : perform(index, state);
+	}
+	
+	/**
+	 * Performs the action of a token that was not produced by a {@link Descender} on the given {@link LexerState}.
+	 */
+	private C perform(int index, LexerState<C, T, R, D, L> state) throws LexerException {
+		int type = typeColumn[index];
+		Matcher m = types.getPattern(type).matcher(input);
+		AbstractLexer.matchAt(m, startColumn[index]); //This is guaranteed to reproduce the original match
+		state.setHead(m.end());
+		return types.getAction(type).perform(lexer, state, m);
+	}
+	
+	/**
+	 * Produces the {@link ConsCell ConsCells} for every top-level token.
+	 * 
+	 * @return the root cell of the resulting cell tree (the left-most cell) or {@code null} if there are no tokens
+	 * @throws LexerException
+	 *             if an action throws one
+	 */
+	public C getRoot() throws LexerException {
+		return getRoot((Object[]) null);
+	}
+	
+	/**
+	 * Produces the {@link ConsCell ConsCells} for every top-level token in two phases. First, the actions of all of the
+	 * tokens whose actions are {@link PureAction PureActions} are performed in parallel in {@code pool}. Then, the cell tree
+	 * is assembled in order on the calling thread, which performs the remaining actions and the {@link Descender} close
+	 * actions as it goes.
+	 * 
+	 * @param pool
+	 *            the {@link ForkJoinPool} in which to perform the {@link PureAction PureActions}
+	 * @return the root cell of the resulting cell tree (the left-most cell) or {@code null} if there are no tokens
+	 * @throws LexerException
+	 *             if an action throws one
+	 */
+	public C getRoot(ForkJoinPool pool) throws LexerException {
+		Object[] performed = new Object[size];
+		pool.invoke(new PerformPure(performed, 0, size));
+		return getRoot(performed);
+	}
+	
+	private C getRoot(Object[] performed) throws LexerException {
+		return size == 0 ? null : assemble(-1, performed);
+	}
+	
+	/**
+	 * Performs the {@link PureAction PureActions} of the tokens in a range of the {@link TokenTape}, splitting the range
+	 * until it is small enough to be worth performing on a single thread.
+	 */
+	private final class PerformPure extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 1024;
+		private final Object[] performed;
+		private final int from, to;
+		
+		PerformPure(Object[] performed, int from, int to) {
+			this.performed = performed;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new PerformPure(performed, from, mid), new PerformPure(performed, mid, to));
+				return;
+			}
+			LexerState<C, T, R, D, L> state = null; //The results of PureActions do not depend on the LexerState, so one is shared by the range
+			for (int i = from; i < to; i++) {
+				int type = typeColumn[i];
+				if (types.getDescender(type) == null && types.getAction(type) instanceof PureAction)
+					performed[i] = perform(i, state == null ? state = enclosing(parentColumn[i]) : state);
+			}
+		}
+	}
+	
+	@Override
+	public int add(int type, int start, int end, int parent) {
+		if (size == typeColumn.length) {
+			int capacity = size + (size >> 1);
+			typeColumn = Arrays.copyOf(typeColumn, capacity);
+			startColumn = Arrays.copyOf(startColumn, capacity);
+			endColumn = Arrays.copyOf(endColumn, capacity);
+			parentColumn = Arrays.copyOf(parentColumn, capacity);
+		}
+		typeColumn[size] = type;
+		startColumn[size] = start;
+		endColumn[size] = end;
+		parentColumn[size] = parent;
+		return size++;
+	}
+	
+	@Override
+	public void close(int index, int end, boolean matched) {
+		endColumn[index] = end;
+		if (!matched)
+			unclosed.set(index);
+	}
+	
+	/**
+	 * Releases the excess capacity of the columns.
+	 */
+	@Override
+	public void finish() {
+		typeColumn = Arrays.copyOf(typeColumn, size);
+		startColumn = Arrays.copyOf(startColumn, size);
+		endColumn = Arrays.copyOf(endColumn, size);
+		parentColumn = Arrays.copyOf(parentColumn, size);
+	}
+	
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return index;
+	}
+}
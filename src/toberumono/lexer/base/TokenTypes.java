@@ -0,0 +1,178 @@
+package toberumono.lexer.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * Assigns compact {@code int} ids to the {@link Pattern Patterns} that produce tokens in a {@link TokenSink}. Ids are
+ * assigned per {@link Language}, so the same {@link Pattern} registered in two {@link Language Languages} receives two ids.
+ * 
+ * @author Toberumono
+ * @param <C>
+ *            the implementation of {@link ConsCell} to be used
+ * @param <T>
+ *            the implementation of {@link ConsType} to be used
+ * @param <R>
+ *            the implementation of {@link Rule} to be used
+ * @param <D>
+ *            the implementation of {@link Descender} to be used
+ * @param <L>
+ *            the implementation of {@link Lexer} to be used
+ */
+public class TokenTypes<C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> {
+	private final List<Type> types;
+	private final Map<Language<C, T, R, D, L>, Map<Pattern, Integer>> ids;
+	
+	/**
+	 * Constructs an empty {@link TokenTypes}.
+	 */
+	public TokenTypes() {
+		types = new ArrayList<>();
+		ids = new IdentityHashMap<>();
+	}
+	
+	/**
+	 * Gets the id for a {@link Pattern} in the given {@link Language}, assigning a new one if needed.
+	 * 
+	 * @param language
+	 *            the {@link Language} that was active when the {@link Pattern} matched
+	 * @param pattern
+	 *            the {@link Pattern} that matched
+	 * @param action
+	 *            the {@link LexerAction} associated with {@code pattern} in {@code language}
+	 * @param descender
+	 *            the {@link Descender} for which {@code pattern} is the open {@link Pattern} or {@code null}
+	 * @return the id
+	 */
+	public int getId(Language<C, T, R, D, L> language, Pattern pattern, LexerAction<C, T, R, D, L, MatchResult> action, D descender) {
+		return getId(language, pattern, action, descender, null);
+	}
+	
+	/**
+	 * Gets the id for a {@link Pattern} in the given {@link Language} that leaves the given {@link Language} stack active,
+	 * assigning a new one if needed. {@link Descender} tokens that leave different {@link Language} stacks active receive
+	 * different ids so that their close actions can be performed on the stack that their open actions produced.
+	 * 
+	 * @param languages
+	 *            the {@link Language} stack (bottom first) after the {@link Descender Descender's} open action or
+	 *            {@code null} if it was not recorded
+	 * @see #getId(Language, Pattern, LexerAction, Descender)
+	 */
+	int getId(Language<C, T, R, D, L> language, Pattern pattern, LexerAction<C, T, R, D, L, MatchResult> action, D descender, Language<C, T, R, D, L>[] languages) {
+		Map<Pattern, Integer> languageIds = ids.get(language);
+		if (languageIds == null)
+			ids.put(language, languageIds = new HashMap<>());
+		Integer first = languageIds.get(pattern);
+		for (int id = first == null ? -1 : first; id != -1; id = types.get(id).next)
+			if (sameLanguages(types.get(id).languages, languages))
+				return id;
+		int id = types.size();
+		types.add(new Type(language, pattern, action, descender, languages, first == null ? -1 : first));
+		languageIds.put(pattern, id);
+		return id;
+	}
+	
+	private static boolean sameLanguages(Language<?, ?, ?, ?, ?>[] a, Language<?, ?, ?, ?, ?>[] b) {
+		if (a == b)
+			return true;
+		if (a == null || b == null || a.length != b.length)
+			return false;
+		for (int i = 0; i < a.length; i++)
+			if (a[i] != b[i])
+				return false;
+		return true;
+	}
+	
+	/**
+	 * @return the number of ids that have been assigned
+	 */
+	public int size() {
+		return types.size();
+	}
+	
+	/**
+	 * @param id
+	 *            an id
+	 * @return the {@link Pattern} with the given id. For {@link Descender} tokens, this is the
+	 *         {@link Descender#getOpenPattern() open Pattern}
+	 */
+	public Pattern getPattern(int id) {
+		return types.get(id).pattern;
+	}
+	
+	/**
+	 * @param id
+	 *            an id
+	 * @return the name under which the {@link Pattern} with the given id is registered in its {@link Language}
+	 * @see Language#getNames()
+	 */
+	public String getName(int id) {
+		Type type = types.get(id);
+		return type.language.getNames().get(type.pattern);
+	}
+	
+	/**
+	 * @param id
+	 *            an id
+	 * @return the {@link Language} in which the {@link Pattern} with the given id matched
+	 */
+	public Language<C, T, R, D, L> getLanguage(int id) {
+		return types.get(id).language;
+	}
+	
+	/**
+	 * @param id
+	 *            an id
+	 * @return the {@link LexerAction} associated with the {@link Pattern} with the given id
+	 */
+	public LexerAction<C, T, R, D, L, MatchResult> getAction(int id) {
+		return types.get(id).action;
+	}
+	
+	/**
+	 * @param id
+	 *            an id
+	 * @return the {@link Descender} that the {@link Pattern} with the given id opens or {@code null} if it belongs to a
+	 *         {@link Rule}
+	 */
+	public D getDescender(int id) {
+		return types.get(id).descender;
+	}
+	
+	/**
+	 * @param id
+	 *            an id
+	 * @return the {@link Language} stack (bottom first) after the open action of the {@link Descender} token with the given
+	 *         id or {@code null} if it was not recorded. This must not be modified
+	 */
+	Language<C, T, R, D, L>[] getLanguages(int id) {
+		return types.get(id).languages;
+	}
+	
+	private class Type {
+		final Language<C, T, R, D, L> language;
+		final Pattern pattern;
+		final LexerAction<C, T, R, D, L, MatchResult> action;
+		final D descender;
+		final Language<C, T, R, D, L>[] languages;
+		final int next; //The id of the next Type with the same Language and Pattern or -1
+		
+		Type(Language<C, T, R, D, L> language, Pattern pattern, LexerAction<C, T, R, D, L, MatchResult> action, D descender, Language<C, T, R, D, L>[] languages, int next) {
+			this.language = language;
+			this.pattern = pattern;
+			this.action = action;
+			this.descender = descender;
+			this.languages = languages;
+			this.next = next;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package toberumono.lexer.errors;
+
+import toberumono.lexer.base.Lexer;
+import toberumono.lexer.base.LexerDeadline;
+import toberumono.lexer.base.LexerState;
+
+/**
+ * Thrown when a {@link Lexer} stops before the end of its input because its {@link LexerDeadline} passed, because it was
+ * cancelled, or because its thread was interrupted.<br>
+ * The {@link #getState() state} holds the tokens that had been produced before the {@link Lexer} stopped.
+ * 
+ * @author Toberumono
+ * @see Lexer#lexAsync(String, java.time.Duration, java.util.concurrent.Executor)
+ */
+public class LexerAbortedException extends LexerException {
+	private final Reason reason;
+	private final int position;
+	
+	/**
+	 * The reasons for which a {@link Lexer} can stop early.
+	 * 
+	 * @author Toberumono
+	 */
+	public static enum Reason {
+		/**
+		 * The deadline passed
+		 */
+		DEADLINE,
+		/**
+		 * The {@link LexerDeadline} was {@link LexerDeadline#cancel() cancelled}
+		 */
+		CANCELLED,
+		/**
+		 * The lexing thread was interrupted
+		 */
+		INTERRUPTED
+	}
+	
+	/**
+	 * Constructs a {@link LexerAbortedException} for the given {@link Reason}.
+	 * 
+	 * @param reason
+	 *            the {@link Reason} for which the {@link Lexer} stopped
+	 * @param position
+	 *            the index in the input that the {@link Lexer} had reached when it stopped
+	 * @param state
+	 *            the {@link LexerState} of the {@link Lexer} immediately prior to the exception being raised
+	 */
+	public LexerAbortedException(Reason reason, int position, LexerState<?, ?, ?, ?, ?> state) {
+		this(reason, position, state, null);
+	}
+	
+	/**
+	 * Constructs a {@link LexerAbortedException} for the given {@link Reason} with the given cause.
+	 * 
+	 * @param reason
+	 *            the {@link Reason} for which the {@link Lexer} stopped
+	 * @param position
+	 *            the index in the input that the {@link Lexer} had reached when it stopped
+	 * @param state
+	 *            the {@link LexerState} of the {@link Lexer} immediately prior to the exception being raised
+	 * @param cause
+	 *            the exception that was thrown at the point where the {@link Lexer} stopped (this may be {@code null})
+	 */
+	public LexerAbortedException(Reason reason, int position, LexerState<?, ?, ?, ?, ?> state, Throwable cause) {
+		super("Lexing stopped at " + position + " (" + reason + ")", cause, state);
+		this.reason = reason;
+		this.position = position;
+	}
+	
+	/**
+	 * @return the {@link Reason} for which the {@link Lexer} stopped
+	 */
+	public Reason getReason() {
+		return reason;
+	}
+	
+	/**
+	 * @return the index in the input that the {@link Lexer} had reached when it stopped
+	 */
+	public int getPosition() {
+		return position;
+	}
+}
@@ -1,5 +1,6 @@
 package toberumono.lexer.errors;
 
+import toberumono.lexer.base.ConsCellArena;
 import toberumono.lexer.base.Descender;
 import toberumono.lexer.base.Lexer;
 import toberumono.lexer.base.LexerState;
@@ -9,12 +10,27 @@ import toberumono.structures.sexpressions.ConsType;
 import toberumono.structures.sexpressions.GenericConsCell;
 
 /**
- * Root class for all exceptions thrown by this library.
+ * Root class for all exceptions thrown by this library.<br>
+ * Constructing a {@link LexerException} is cheap: the position, depth, and a short window of the input around the position
+ * are captured immediately, but the {@link ConsCell ConsCells} that had been produced are only cloned when
+ * {@link #getState()} is first called. Only the cells that had been produced when the exception was constructed are
+ * cloned. However, the cells of exceptions thrown by {@link Lexer#lexWithArena(String, ConsCellArena) lexWithArena} are
+ * cloned before they are thrown because the {@link ConsCellArena} reuses the originals once it is released. If the
+ * {@link Lexer} that threw the exception has
+ * {@link Lexer#setStacklessExceptions(boolean) stackless exceptions} enabled, no stack trace is captured either.
  * 
  * @author Toberumono
  */
 public class LexerException extends RuntimeException {
-	private final LexerState<?, ?, ?, ?, ?> state; //We have to use wildcards because Exceptions cannot have generic parameters
+	/**
+	 * The maximum number of characters on each side of the position that are included in the {@link #getContext() context}
+	 */
+	public static final int CONTEXT_RADIUS = 32;
+	
+	private final LexerState<?, ?, ?, ?, ?> snapshot; //We have to use wildcards because Exceptions cannot have generic parameters
+	private LexerState<?, ?, ?, ?, ?> state;
+	private final int position, depth;
+	private final String context;
 	
 	/**
 	 * Constructs a new exception with {@code null} as its detail message. The cause is not initialized, and may subsequently
@@ -24,8 +40,7 @@ public class LexerException extends RuntimeException {
 	 *            the {@link LexerState} of the {@link Lexer} immediately prior to the exception being raised
 	 */
 	public LexerException(LexerState<?, ?, ?, ?, ?> state) {
-		super();
-		this.state = state.copy();
+		this(null, null, state);
 	}
 	
 	/**
@@ -38,8 +53,7 @@ public class LexerException extends RuntimeException {
 	 *            the {@link LexerState} of the {@link Lexer} immediately prior to the exception being raised
 	 */
 	public LexerException(String message, LexerState<?, ?, ?, ?, ?> state) {
-		super(message);
-		this.state = state.copy();
+		this(message, null, state);
 	}
 	
 	/**
@@ -52,8 +66,7 @@ public class LexerException extends RuntimeException {
 	 *            the {@link LexerState} of the {@link Lexer} immediately prior to the exception being raised
 	 */
 	public LexerException(Throwable cause, LexerState<?, ?, ?, ?, ?> state) {
-		super(cause);
-		this.state = state.copy();
+		this(cause == null ? null : cause.toString(), cause, state);
 	}
 	
 	/**
@@ -70,13 +83,20 @@ public class LexerException extends RuntimeException {
 	 *            the {@link LexerState} of the {@link Lexer} immediately prior to the exception being raised
 	 */
 	public LexerException(String message, Throwable cause, LexerState<?, ?, ?, ?, ?> state) {
-		super(message, cause);
-		this.state = state.copy();
+		super(message, cause, true, !state.getLexer().isStacklessExceptions());
+		snapshot = state.shallowCopy(); //This records the last cell, which bounds the cells that getState clones
+		position = state.getHead();
+		depth = state.getDepth();
+		String input = state.getInput();
+		context = input.substring(Math.max(0, position - CONTEXT_RADIUS), Math.min(input.length(), position + CONTEXT_RADIUS));
 	}
 	
 	/**
 	 * This method does use an unsafe type-cast; however, no issues will occur provided that the {@link Lexer} is one that
-	 * threw the exception in the first place.
+	 * threw the exception in the first place.<br>
+	 * The {@link ConsCell ConsCells} are cloned the first time that this is called. Only the cells up to the last one that
+	 * had been appended when the exception was raised are cloned, so tokens that were appended to the original
+	 * {@link LexerState} afterward (which only happens if the caller continued to use it) are not included in the copy.
 	 * 
 	 * @param <C>
 	 *            the implementation of {@link ConsCell} in use
@@ -91,8 +111,32 @@ public class LexerException extends RuntimeException {
 	 * @return the {@link LexerState} of the {@link Lexer} immediately prior to the exception being raised
 	 */
 	@SuppressWarnings("unchecked")
-	public <C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> LexerState<C, T, R, D, L>
+	public synchronized <C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> LexerState<C, T, R, D, L>
 			getState() {
+		if (state == null)
+			state = snapshot.copy();
 		return (LexerState<C, T, R, D, L>) state;
 	}
+	
+	/**
+	 * @return the head position of the {@link LexerState} when the exception was raised
+	 */
+	public int getHead() {
+		return position;
+	}
+	
+	/**
+	 * @return the number of {@link Descender Descenders} that enclosed the head position when the exception was raised
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * @return up to {@value #CONTEXT_RADIUS} characters of the input on each side of the {@link #getHead() head
+	 *         position} when the exception was raised
+	 */
+	public String getContext() {
+		return context;
+	}
 }
@@ -0,0 +1,60 @@
+package toberumono.lexer.errors;
+
+import java.util.regex.Pattern;
+
+import toberumono.lexer.base.Lexer;
+import toberumono.lexer.base.LexerState;
+import toberumono.lexer.base.MatchBudget;
+
+/**
+ * Thrown when a {@link Pattern} exceeds the {@link MatchBudget} of a {@link Lexer} whose {@link MatchBudget.Policy Policy} is
+ * {@link MatchBudget.Policy#FAIL FAIL}.
+ * 
+ * @author Toberumono
+ * @see Lexer#setMatchBudget(MatchBudget)
+ */
+public class MatchBudgetExceededException extends LexerException {
+	private final String name;
+	private final Pattern pattern;
+	private final int position;
+	
+	/**
+	 * Constructs a {@link MatchBudgetExceededException} for the given {@link Pattern}.
+	 * 
+	 * @param name
+	 *            the name of the {@link Pattern} in the active {@link toberumono.lexer.base.Language Language}
+	 * @param pattern
+	 *            the {@link Pattern} that exceeded the {@link MatchBudget}
+	 * @param position
+	 *            the position at which the {@link Pattern} was being matched
+	 * @param state
+	 *            the {@link LexerState} of the {@link Lexer} immediately prior to the exception being raised
+	 */
+	public MatchBudgetExceededException(String name, Pattern pattern, int position, LexerState<?, ?, ?, ?, ?> state) {
+		super(name + " exceeded its match budget at " + position, state);
+		this.name = name;
+		this.pattern = pattern;
+		this.position = position;
+	}
+	
+	/**
+	 * @return the name of the {@link Pattern} that exceeded the {@link MatchBudget}
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return the {@link Pattern} that exceeded the {@link MatchBudget}
+	 */
+	public Pattern getPattern() {
+		return pattern;
+	}
+	
+	/**
+	 * @return the position at which the {@link Pattern} was being matched
+	 */
+	public int getPosition() {
+		return position;
+	}
+}
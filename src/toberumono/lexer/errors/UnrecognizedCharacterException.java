@@ -12,6 +12,8 @@ import toberumono.lexer.base.Rule;
  * @author Toberumono
  */
 public class UnrecognizedCharacterException extends LexerException {
+	private final CharSequence input;
+	private final int index;
 	
 	/**
 	 * Constructs an {@link UnrecognizedCharacterException} based on the given {@link LexerState}.
@@ -35,6 +37,27 @@ public class UnrecognizedCharacterException extends LexerException {
 	 *            the {@link LexerState} of the {@link Lexer} immediately prior to the exception being raised
 	 */
 	public UnrecognizedCharacterException(String input, int index, LexerState<?, ?, ?, ?, ?> state) {
-		super("Unknown character at " + index + ": " + input.charAt(index) + "\nRemaining Input: " + input.substring(index), state);
+		super(state);
+		this.input = input;
+		this.index = index;
+	}
+	
+	/**
+	 * @return the index at which the unrecognized character was encountered
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
+	/**
+	 * The message (which includes up to {@code 2 * }{@value #CONTEXT_RADIUS} characters of the remaining input) is only built
+	 * when this is called so that throwing and catching an {@link UnrecognizedCharacterException} does not copy any of the
+	 * input.
+	 */
+	@Override
+	public String getMessage() {
+		int end = Math.min(input.length(), index + 2 * CONTEXT_RADIUS);
+		return "Unknown character at " + index + ": " + input.charAt(index) + "\nRemaining Input: " + input.subSequence(index, end) +
+				(end < input.length() ? "..." : "");
 	}
 }
@@ -0,0 +1,188 @@
+package toberumono.lexer.util;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.MatchResult;
+
+/**
+ * A bounded cache from the text of a token to the value produced from it.<br>
+ * Lookups are keyed directly on a range of characters in the input, so the text of the token is only extracted into a
+ * {@link String} when it is not already in the cache. This makes the {@link LexemeCache} useful for tokens that repeat
+ * often, such as identifiers, keywords, and small numbers: every occurrence of the same text shares one {@code car} value.
+ * <br>
+ * Each value is stored together with the converter that produced it, and it is only returned for lookups that use the same
+ * converter, so a single {@link LexemeCache} can be shared by {@link toberumono.lexer.base.Rule Rules} that convert the
+ * same text differently. Such {@link toberumono.lexer.base.Rule Rules} compete for the same slots, however, so sharing is
+ * most effective between {@link toberumono.lexer.base.Rule Rules} that use the same converter instance.<br>
+ * The cache is direct-mapped, so a newly produced value replaces whichever value was stored in its slot. A
+ * {@link LexemeCache} can be safely shared between threads.<br>
+ * <b>Note:</b> because values are shared, they should be immutable.
+ * 
+ * @author Toberumono
+ * @param <V>
+ *            the type of the values in the cache
+ * @see toberumono.lexer.base.AbstractRule#AbstractRule(java.util.regex.Pattern, toberumono.structures.sexpressions.ConsType,
+ *      Function, LexemeCache)
+ */
+public class LexemeCache<V> {
+	/**
+	 * The default maximum length of a token that can be stored in a {@link LexemeCache}.
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 64;
+	
+	private final Entry<V>[] entries;
+	private final int mask, maxLength;
+	private final LongAdder hits, misses;
+	
+	/**
+	 * Constructs a {@link LexemeCache} that holds up to {@code capacity} values for tokens that are at most
+	 * {@link #DEFAULT_MAX_LENGTH} characters long.
+	 * 
+	 * @param capacity
+	 *            the maximum number of values to hold. This is rounded up to the next power of two
+	 */
+	public LexemeCache(int capacity) {
+		this(capacity, DEFAULT_MAX_LENGTH);
+	}
+	
+	/**
+	 * Constructs a {@link LexemeCache} that holds up to {@code capacity} values for tokens that are at most
+	 * {@code maxLength} characters long.
+	 * 
+	 * @param capacity
+	 *            the maximum number of values to hold. This is rounded up to the next power of two
+	 * @param maxLength
+	 *            the maximum length of a token whose value will be cached. Values for longer tokens are always produced
+	 *            from scratch
+	 */
+	@SuppressWarnings("unchecked")
+	public LexemeCache(int capacity, int maxLength) {
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("The capacity must be between 1 and 2^30.");
+		if (maxLength < 0)
+			throw new IllegalArgumentException("The maximum length cannot be negative.");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		entries = (Entry<V>[]) new Entry[size];
+		mask = size - 1;
+		this.maxLength = maxLength;
+		hits = new LongAdder();
+		misses = new LongAdder();
+	}
+	
+	/**
+	 * Gets the value that {@code converter} produced for the text matched by {@code match}, producing it if it is not already
+	 * in the {@link LexemeCache}.
+	 * 
+	 * @param input
+	 *            the {@link CharSequence} on which the match was performed
+	 * @param match
+	 *            the match
+	 * @param converter
+	 *            the function that produces a value from the matched text
+	 * @return the value for the matched text
+	 */
+	public V get(CharSequence input, MatchResult match, Function<? super String, ? extends V> converter) {
+		return get(input, match.start(), match.end(), converter);
+	}
+	
+	/**
+	 * Gets the value that {@code converter} produced for the text in [{@code start}, {@code end}) in {@code input},
+	 * producing it if it is not already in the {@link LexemeCache}. Values that were produced by a different converter are
+	 * never returned.
+	 * 
+	 * @param input
+	 *            the {@link CharSequence} that contains the text
+	 * @param start
+	 *            the index at which the text starts
+	 * @param end
+	 *            the index at which the text ends (exclusive)
+	 * @param converter
+	 *            the function that produces a value from the text
+	 * @return the value for the text
+	 */
+	public V get(CharSequence input, int start, int end, Function<? super String, ? extends V> converter) {
+		if (end - start > maxLength) {
+			misses.increment();
+			return converter.apply(input.subSequence(start, end).toString());
+		}
+		int hash = 0;
+		for (int i = start; i < end; i++)
+			hash = 31 * hash + input.charAt(i);
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		Entry<V> entry = entries[slot]; //Entries are immutable, so a racing write can at worst cause an extra miss
+		if (entry != null && entry.hash == hash && entry.converter == converter && entry.matches(input, start, end)) {
+			hits.increment();
+			return entry.value;
+		}
+		misses.increment();
+		String key = input.subSequence(start, end).toString();
+		V value = converter.apply(key);
+		entries[slot] = new Entry<>(key, hash, converter, value);
+		return value;
+	}
+	
+	/**
+	 * @return the number of lookups that were answered from the {@link LexemeCache}
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	/**
+	 * @return the number of lookups that required a new value to be produced
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	/**
+	 * @return the fraction of lookups that were answered from the {@link LexemeCache} or {@code 0} if there have been no
+	 *         lookups
+	 */
+	public double getHitRate() {
+		long h = getHits(), total = h + getMisses();
+		return total == 0 ? 0 : (double) h / total;
+	}
+	
+	/**
+	 * @return the maximum number of values that the {@link LexemeCache} can hold
+	 */
+	public int getCapacity() {
+		return entries.length;
+	}
+	
+	/**
+	 * Removes all of the values from the {@link LexemeCache} and resets its statistics.
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length; i++)
+			entries[i] = null;
+		hits.reset();
+		misses.reset();
+	}
+	
+	private static final class Entry<V> {
+		final String key;
+		final int hash;
+		final Function<? super String, ? extends V> converter;
+		final V value;
+		
+		Entry(String key, int hash, Function<? super String, ? extends V> converter, V value) {
+			this.key = key;
+			this.hash = hash;
+			this.converter = converter;
+			this.value = value;
+		}
+		
+		boolean matches(CharSequence input, int start, int end) {
+			if (key.length() != end - start)
+				return false;
+			for (int i = 0; i < key.length(); i++)
+				if (key.charAt(i) != input.charAt(start + i))
+					return false;
+			return true;
+		}
+	}
+}
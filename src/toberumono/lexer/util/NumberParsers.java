@@ -0,0 +1,262 @@
+package toberumono.lexer.util;
+
+import java.util.regex.MatchResult;
+
+import toberumono.lexer.base.Descender;
+import toberumono.lexer.base.Lexer;
+import toberumono.lexer.base.LexerAction;
+import toberumono.lexer.base.Rule;
+import toberumono.structures.sexpressions.ConsCell;
+import toberumono.structures.sexpressions.ConsType;
+import toberumono.structures.sexpressions.GenericConsCell;
+
+/**
+ * Parses numbers directly from a range of characters in the input so that the matched text does not need to be extracted
+ * into a {@link String} first.<br>
+ * For everything that the {@link NumberPatterns} (other than the complex number patterns) can match, the results are
+ * identical to those of {@link Integer#parseInt(String)}, {@link Long#parseLong(String)}, and
+ * {@link Double#parseDouble(String)}. Decimals that cannot be converted exactly with a single floating-point operation are
+ * handed to {@link Double#parseDouble(String)}.
+ * 
+ * @author Toberumono
+ * @see NumberPatterns
+ */
+public final class NumberParsers {
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22}; //These are the powers of ten that can be represented exactly
+	
+	private NumberParsers() {/* This is a static utility class */}
+	
+	/**
+	 * Parses the text matched by {@code match} as a signed decimal {@code int}.
+	 * 
+	 * @param input
+	 *            the {@link CharSequence} on which the match was performed
+	 * @param match
+	 *            the match
+	 * @return the parsed value
+	 * @throws NumberFormatException
+	 *             under the same conditions as {@link Integer#parseInt(String)}
+	 */
+	public static int parseInt(CharSequence input, MatchResult match) {
+		return parseInt(input, match.start(), match.end());
+	}
+	
+	/**
+	 * Parses the text in [{@code start}, {@code end}) in {@code input} as a signed decimal {@code int}.
+	 * 
+	 * @param input
+	 *            the {@link CharSequence} that contains the text
+	 * @param start
+	 *            the index at which the text starts
+	 * @param end
+	 *            the index at which the text ends (exclusive)
+	 * @return the parsed value
+	 * @throws NumberFormatException
+	 *             under the same conditions as {@link Integer#parseInt(String)}
+	 */
+	public static int parseInt(CharSequence input, int start, int end) {
+		return (int) parseLong(input, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Parses the text matched by {@code match} as a signed decimal {@code long}.
+	 * 
+	 * @param input
+	 *            the {@link CharSequence} on which the match was performed
+	 * @param match
+	 *            the match
+	 * @return the parsed value
+	 * @throws NumberFormatException
+	 *             under the same conditions as {@link Long#parseLong(String)}
+	 */
+	public static long parseLong(CharSequence input, MatchResult match) {
+		return parseLong(input, match.start(), match.end());
+	}
+	
+	/**
+	 * Parses the text in [{@code start}, {@code end}) in {@code input} as a signed decimal {@code long}.
+	 * 
+	 * @param input
+	 *            the {@link CharSequence} that contains the text
+	 * @param start
+	 *            the index at which the text starts
+	 * @param end
+	 *            the index at which the text ends (exclusive)
+	 * @return the parsed value
+	 * @throws NumberFormatException
+	 *             under the same conditions as {@link Long#parseLong(String)}
+	 */
+	public static long parseLong(CharSequence input, int start, int end) {
+		return parseLong(input, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+	
+	private static long parseLong(CharSequence input, int start, int end, long min, long max) {
+		int i = start;
+		boolean negative = false;
+		if (i < end) {
+			char first = input.charAt(i);
+			if (first == '-' || first == '+') {
+				negative = first == '-';
+				i++;
+			}
+		}
+		if (i >= end)
+			throw invalid(input, start, end);
+		//Accumulate negatively (as the JDK does) so that the minimum value can be represented
+		long limit = negative ? min : -max, multmin = limit / 10, result = 0;
+		for (; i < end; i++) {
+			int digit = Character.digit(input.charAt(i), 10);
+			if (digit < 0 || result < multmin)
+				throw invalid(input, start, end);
+			result *= 10;
+			if (result < limit + digit)
+				throw invalid(input, start, end);
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+	
+	/**
+	 * Parses the text matched by {@code match} as a {@code double}.
+	 * 
+	 * @param input
+	 *            the {@link CharSequence} on which the match was performed
+	 * @param match
+	 *            the match
+	 * @return the parsed value
+	 * @throws NumberFormatException
+	 *             under the same conditions as {@link Double#parseDouble(String)}
+	 */
+	public static double parseDouble(CharSequence input, MatchResult match) {
+		return parseDouble(input, match.start(), match.end());
+	}
+	
+	/**
+	 * Parses the text in [{@code start}, {@code end}) in {@code input} as a {@code double}.<br>
+	 * Plain decimals (an optional sign, digits, and an optional fractional part) whose digits form an integer less than
+	 * 2<sup>53</sup> and that have at most 22 digits after the decimal point are converted without allocating. All other
+	 * text is handed to {@link Double#parseDouble(String)}.
+	 * 
+	 * @param input
+	 *            the {@link CharSequence} that contains the text
+	 * @param start
+	 *            the index at which the text starts
+	 * @param end
+	 *            the index at which the text ends (exclusive)
+	 * @return the parsed value
+	 * @throws NumberFormatException
+	 *             under the same conditions as {@link Double#parseDouble(String)}
+	 */
+	public static double parseDouble(CharSequence input, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end) {
+			char first = input.charAt(i);
+			if (first == '-' || first == '+') {
+				negative = first == '-';
+				i++;
+			}
+		}
+		long mantissa = 0;
+		int digits = 0, fractionDigits = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			char c = input.charAt(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa >= MAX_EXACT_MANTISSA)
+					return Double.parseDouble(input.subSequence(start, end).toString());
+				digits++;
+				if (point)
+					fractionDigits++;
+			}
+			else if (c == '.' && !point)
+				point = true;
+			else
+				return Double.parseDouble(input.subSequence(start, end).toString());
+		}
+		if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length)
+			return Double.parseDouble(input.subSequence(start, end).toString());
+		//Both operands are exact, so IEEE division produces the correctly rounded result
+		double value = fractionDigits == 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * Constructs a {@link LexerAction} that produces {@link GenericConsCell ConsCells} whose {@code car} values are the
+	 * {@link Integer} values of the matched text.
+	 * 
+	 * @param <C>
+	 *            the implementation of {@link ConsCell} to be used
+	 * @param <T>
+	 *            the implementation of {@link ConsType} to be used
+	 * @param <R>
+	 *            the implementation of {@link Rule} to be used
+	 * @param <D>
+	 *            the implementation of {@link Descender} to be used
+	 * @param <L>
+	 *            the implementation of {@link Lexer} to be used
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} values
+	 * @return a {@link LexerAction} that parses {@code int} values
+	 */
+	public static <C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> LexerAction<C, T, R, D, L, MatchResult>
+			intAction(T type) {
+		return (lexer, state, match) -> lexer.getConsCellConstructor().construct(Integer.valueOf(parseInt(state.getInput(), match)), type, null,
+				lexer.getEmptyType());
+	}
+	
+	/**
+	 * Constructs a {@link LexerAction} that produces {@link GenericConsCell ConsCells} whose {@code car} values are the
+	 * {@link Long} values of the matched text.
+	 * 
+	 * @param <C>
+	 *            the implementation of {@link ConsCell} to be used
+	 * @param <T>
+	 *            the implementation of {@link ConsType} to be used
+	 * @param <R>
+	 *            the implementation of {@link Rule} to be used
+	 * @param <D>
+	 *            the implementation of {@link Descender} to be used
+	 * @param <L>
+	 *            the implementation of {@link Lexer} to be used
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} values
+	 * @return a {@link LexerAction} that parses {@code long} values
+	 */
+	public static <C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> LexerAction<C, T, R, D, L, MatchResult>
+			longAction(T type) {
+		return (lexer, state, match) -> lexer.getConsCellConstructor().construct(Long.valueOf(parseLong(state.getInput(), match)), type, null,
+				lexer.getEmptyType());
+	}
+	
+	/**
+	 * Constructs a {@link LexerAction} that produces {@link GenericConsCell ConsCells} whose {@code car} values are the
+	 * {@link Double} values of the matched text.
+	 * 
+	 * @param <C>
+	 *            the implementation of {@link ConsCell} to be used
+	 * @param <T>
+	 *            the implementation of {@link ConsType} to be used
+	 * @param <R>
+	 *            the implementation of {@link Rule} to be used
+	 * @param <D>
+	 *            the implementation of {@link Descender} to be used
+	 * @param <L>
+	 *            the implementation of {@link Lexer} to be used
+	 * @param type
+	 *            the {@link ConsType type} of the {@code car} values
+	 * @return a {@link LexerAction} that parses {@code double} values
+	 */
+	public static <C extends GenericConsCell<C, T>, T extends ConsType, R extends Rule<C, T, R, D, L>, D extends Descender<C, T, R, D, L>, L extends Lexer<C, T, R, D, L>> LexerAction<C, T, R, D, L, MatchResult>
+			doubleAction(T type) {
+		return (lexer, state, match) -> lexer.getConsCellConstructor().construct(Double.valueOf(parseDouble(state.getInput(), match)), type, null,
+				lexer.getEmptyType());
+	}
+	
+	private static NumberFormatException invalid(CharSequence input, int start, int end) {
+		return new NumberFormatException("For input string: \"" + input.subSequence(start, end) + "\"");
+	}
+}
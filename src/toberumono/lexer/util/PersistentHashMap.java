@@ -0,0 +1,408 @@
+package toberumono.lexer.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A {@link Map} backed by a hash array mapped trie whose nodes are never modified once they have been created.<br>
+ * Because the nodes are immutable, {@link #clone()} only copies a reference to the root of the trie, and each later
+ * modification to either the original or the clone copies only the nodes on the path to the changed entry. This makes the
+ * {@link PersistentHashMap} well suited to {@link toberumono.lexer.base.Language Languages} that are cloned often and then
+ * changed slightly.<br>
+ * Like {@link java.util.LinkedHashMap}, the {@link PersistentHashMap} iterates over its entries in the order in which their
+ * keys were first inserted. Iterating over the entries requires sorting them, so iteration is slower than that of
+ * {@link java.util.LinkedHashMap}. The entries do not support {@link java.util.Map.Entry#setValue(Object)}.
+ * 
+ * @author Toberumono
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type of the values
+ */
+public class PersistentHashMap<K, V> extends AbstractMap<K, V> implements Cloneable {
+	private static final int BITS = 5, MASK = (1 << BITS) - 1;
+	private static final Comparator<Entry<?, ?>> INSERTION_ORDER = (a, b) -> Long.compare(a.order, b.order);
+	private static final Node EMPTY = new BitmapNode(0, new Object[0]);
+	
+	private Node root;
+	private int size;
+	private long nextOrder;
+	private transient Set<Map.Entry<K, V>> entrySet;
+	
+	/**
+	 * Constructs an empty {@link PersistentHashMap}.
+	 */
+	public PersistentHashMap() {
+		root = EMPTY;
+		size = 0;
+		nextOrder = 0;
+		entrySet = null;
+	}
+	
+	/**
+	 * Constructs a {@link PersistentHashMap} with the same mappings as the given {@link Map}.
+	 * 
+	 * @param map
+	 *            the {@link Map} whose mappings are to be copied
+	 */
+	public PersistentHashMap(Map<? extends K, ? extends V> map) {
+		this();
+		putAll(map);
+	}
+	
+	private static int hash(Object key) {
+		int h = key == null ? 0 : key.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return root.find(key, hash(key), 0) != null;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		Entry<?, ?> entry = root.find(key, hash(key), 0);
+		return entry == null ? null : (V) entry.value;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		int hash = hash(key);
+		Entry<?, ?> old = root.find(key, hash, 0);
+		if (old != null) {
+			if (old.value == value)
+				return value;
+			root = root.put(new Entry<>(key, value, hash, old.order), 0); //Replacing a value keeps the key's position
+			return (V) old.value;
+		}
+		root = root.put(new Entry<>(key, value, hash, nextOrder++), 0);
+		size++;
+		return null;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		int hash = hash(key);
+		Entry<?, ?> old = root.find(key, hash, 0);
+		if (old == null)
+			return null;
+		Node removed = root.remove(key, hash, 0);
+		root = removed == null ? EMPTY : removed;
+		size--;
+		return (V) old.value;
+	}
+	
+	@Override
+	public void clear() {
+		root = EMPTY;
+		size = 0;
+	}
+	
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new EntryIterator();
+				}
+				
+				@Override
+				public int size() {
+					return size;
+				}
+				
+				@Override
+				public boolean contains(Object o) {
+					if (!(o instanceof Map.Entry))
+						return false;
+					Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+					Entry<?, ?> entry = root.find(e.getKey(), hash(e.getKey()), 0);
+					return entry != null && Objects.equals(entry.value, e.getValue());
+				}
+				
+				@Override
+				public void clear() {
+					PersistentHashMap.this.clear();
+				}
+			};
+		return entrySet;
+	}
+	
+	/**
+	 * Produces a {@link PersistentHashMap} with the same mappings in constant time. Later changes to either map do not
+	 * affect the other.
+	 * 
+	 * @return a clone of the {@link PersistentHashMap}
+	 */
+	@Override
+	public PersistentHashMap<K, V> clone() {
+		try {
+			@SuppressWarnings("unchecked")
+			PersistentHashMap<K, V> clone = (PersistentHashMap<K, V>) super.clone();
+			clone.entrySet = null;
+			return clone;
+		}
+		catch (CloneNotSupportedException e) {
+			throw new InternalError(e); //This shouldn't happen because we are Cloneable
+		}
+	}
+	
+	private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+		private final Entry<?, ?>[] entries;
+		private int next;
+		private Entry<?, ?> last;
+		
+		EntryIterator() {
+			entries = new Entry<?, ?>[size];
+			root.collect(entries, 0);
+			Arrays.sort(entries, INSERTION_ORDER);
+			next = 0;
+			last = null;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return next < entries.length;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public Map.Entry<K, V> next() {
+			if (next >= entries.length)
+				throw new NoSuchElementException();
+			return (Map.Entry<K, V>) (last = entries[next++]);
+		}
+		
+		@Override
+		public void remove() {
+			if (last == null)
+				throw new IllegalStateException();
+			PersistentHashMap.this.remove(last.key);
+			last = null;
+		}
+	}
+	
+	private static final class Entry<K, V> implements Map.Entry<K, V> {
+		final K key;
+		final V value;
+		final int hash;
+		final long order;
+		
+		Entry(K key, V value, int hash, long order) {
+			this.key = key;
+			this.value = value;
+			this.hash = hash;
+			this.order = order;
+		}
+		
+		@Override
+		public K getKey() {
+			return key;
+		}
+		
+		@Override
+		public V getValue() {
+			return value;
+		}
+		
+		@Override
+		public V setValue(V value) {
+			throw new UnsupportedOperationException("The entries of a PersistentHashMap cannot be modified.");
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(key) ^ Objects.hashCode(value);
+		}
+		
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+	
+	private static abstract class Node {
+		
+		abstract Entry<?, ?> find(Object key, int hash, int shift);
+		
+		/**
+		 * @return a {@link Node} that contains {@code entry} in place of any existing entry with the same key
+		 */
+		abstract Node put(Entry<?, ?> entry, int shift);
+		
+		/**
+		 * @return a {@link Node} without the entry for {@code key} or {@code null} if it would be empty. The key must be
+		 *         present
+		 */
+		abstract Node remove(Object key, int hash, int shift);
+		
+		abstract int collect(Entry<?, ?>[] out, int offset);
+	}
+	
+	private static final class BitmapNode extends Node {
+		private final int bitmap;
+		private final Object[] slots; //Each slot holds either an Entry or a child Node
+		
+		BitmapNode(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+		
+		static Node of(Entry<?, ?> a, Entry<?, ?> b, int shift) {
+			if (a.hash == b.hash)
+				return new CollisionNode(a.hash, new Entry<?, ?>[]{a, b});
+			int ia = (a.hash >>> shift) & MASK, ib = (b.hash >>> shift) & MASK;
+			if (ia == ib)
+				return new BitmapNode(1 << ia, new Object[]{of(a, b, shift + BITS)});
+			return new BitmapNode((1 << ia) | (1 << ib), ia < ib ? new Object[]{a, b} : new Object[]{b, a});
+		}
+		
+		@Override
+		Entry<?, ?> find(Object key, int hash, int shift) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((bitmap & bit) == 0)
+				return null;
+			Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+			if (slot instanceof Node)
+				return ((Node) slot).find(key, hash, shift + BITS);
+			Entry<?, ?> entry = (Entry<?, ?>) slot;
+			return entry.hash == hash && Objects.equals(entry.key, key) ? entry : null;
+		}
+		
+		@Override
+		Node put(Entry<?, ?> entry, int shift) {
+			int bit = 1 << ((entry.hash >>> shift) & MASK), index = Integer.bitCount(bitmap & (bit - 1));
+			if ((bitmap & bit) == 0) {
+				Object[] out = new Object[slots.length + 1];
+				System.arraycopy(slots, 0, out, 0, index);
+				out[index] = entry;
+				System.arraycopy(slots, index, out, index + 1, slots.length - index);
+				return new BitmapNode(bitmap | bit, out);
+			}
+			Object slot = slots[index], replacement;
+			if (slot instanceof Node)
+				replacement = ((Node) slot).put(entry, shift + BITS);
+			else {
+				Entry<?, ?> existing = (Entry<?, ?>) slot;
+				replacement = existing.hash == entry.hash && Objects.equals(existing.key, entry.key) ? entry : of(existing, entry, shift + BITS);
+			}
+			Object[] out = slots.clone();
+			out[index] = replacement;
+			return new BitmapNode(bitmap, out);
+		}
+		
+		@Override
+		Node remove(Object key, int hash, int shift) {
+			int bit = 1 << ((hash >>> shift) & MASK), index = Integer.bitCount(bitmap & (bit - 1));
+			Object slot = slots[index];
+			if (slot instanceof Node) {
+				Node child = ((Node) slot).remove(key, hash, shift + BITS);
+				if (child != null) {
+					Object[] out = slots.clone();
+					out[index] = child;
+					return new BitmapNode(bitmap, out);
+				}
+			}
+			if (slots.length == 1)
+				return null;
+			Object[] out = new Object[slots.length - 1];
+			System.arraycopy(slots, 0, out, 0, index);
+			System.arraycopy(slots, index + 1, out, index, out.length - index);
+			return new BitmapNode(bitmap & ~bit, out);
+		}
+		
+		@Override
+		int collect(Entry<?, ?>[] out, int offset) {
+			for (Object slot : slots)
+				if (slot instanceof Node)
+					offset = ((Node) slot).collect(out, offset);
+				else
+					out[offset++] = (Entry<?, ?>) slot;
+			return offset;
+		}
+	}
+	
+	private static final class CollisionNode extends Node {
+		private final int hash;
+		private final Entry<?, ?>[] entries;
+		
+		CollisionNode(int hash, Entry<?, ?>[] entries) {
+			this.hash = hash;
+			this.entries = entries;
+		}
+		
+		private int indexOf(Object key) {
+			for (int i = 0; i < entries.length; i++)
+				if (Objects.equals(entries[i].key, key))
+					return i;
+			return -1;
+		}
+		
+		@Override
+		Entry<?, ?> find(Object key, int hash, int shift) {
+			if (hash != this.hash)
+				return null;
+			int index = indexOf(key);
+			return index < 0 ? null : entries[index];
+		}
+		
+		@Override
+		Node put(Entry<?, ?> entry, int shift) {
+			if (entry.hash != hash) //Push this node down a level so that the new entry can sit beside it
+				return new BitmapNode(1 << ((hash >>> shift) & MASK), new Object[]{this}).put(entry, shift);
+			int index = indexOf(entry.key);
+			Entry<?, ?>[] out;
+			if (index < 0) {
+				out = Arrays.copyOf(entries, entries.length + 1);
+				out[entries.length] = entry;
+			}
+			else {
+				out = entries.clone();
+				out[index] = entry;
+			}
+			return new CollisionNode(hash, out);
+		}
+		
+		@Override
+		Node remove(Object key, int hash, int shift) {
+			if (entries.length == 1)
+				return null;
+			int index = indexOf(key);
+			Entry<?, ?>[] out = new Entry<?, ?>[entries.length - 1];
+			System.arraycopy(entries, 0, out, 0, index);
+			System.arraycopy(entries, index + 1, out, index, out.length - index);
+			return new CollisionNode(hash, out);
+		}
+		
+		@Override
+		int collect(Entry<?, ?>[] out, int offset) {
+			System.arraycopy(entries, 0, out, offset, entries.length);
+			return offset + entries.length;
+		}
+	}
+}
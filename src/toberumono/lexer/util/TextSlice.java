@@ -0,0 +1,142 @@
+package toberumono.lexer.util;
+
+import java.util.regex.MatchResult;
+
+/**
+ * A read-only view of a range of characters in another {@link CharSequence} (usually the input being lexed).<br>
+ * Creating a {@link TextSlice} does not copy any characters. The characters are only copied when {@link #toString()} is
+ * called.<br>
+ * <b>Note:</b> a {@link TextSlice} keeps its source alive, so call {@link #toString()} before storing the text of a small
+ * token for a long time.
+ * 
+ * @author Toberumono
+ */
+public final class TextSlice implements CharSequence {
+	private final CharSequence source;
+	private final int start, end;
+	private int hash;
+	
+	/**
+	 * Constructs a {@link TextSlice} covering [{@code start}, {@code end}) in {@code source}.
+	 * 
+	 * @param source
+	 *            the {@link CharSequence} to view
+	 * @param start
+	 *            the index of the first character in the {@link TextSlice}
+	 * @param end
+	 *            the index after the last character in the {@link TextSlice}
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is not within {@code source}
+	 */
+	public TextSlice(CharSequence source, int start, int end) {
+		if (start < 0 || end > source.length() || start > end)
+			throw new IndexOutOfBoundsException("The range [" + start + ", " + end + ") is not within the source (length " + source.length() + ")");
+		if (source instanceof TextSlice) { //Avoid building chains of views
+			TextSlice slice = (TextSlice) source;
+			source = slice.source;
+			start += slice.start;
+			end += slice.start;
+		}
+		this.source = source;
+		this.start = start;
+		this.end = end;
+		hash = 0;
+	}
+	
+	/**
+	 * Constructs a {@link TextSlice} covering the text matched by {@code match} in {@code input}.
+	 * 
+	 * @param input
+	 *            the {@link CharSequence} on which the match was performed
+	 * @param match
+	 *            the match
+	 * @return a {@link TextSlice} equivalent to {@link MatchResult#group() match.group()}
+	 */
+	public static TextSlice of(CharSequence input, MatchResult match) {
+		return new TextSlice(input, match.start(), match.end());
+	}
+	
+	/**
+	 * @return the {@link CharSequence} being viewed
+	 */
+	public CharSequence getSource() {
+		return source;
+	}
+	
+	/**
+	 * @return the index in the source of the first character in the {@link TextSlice}
+	 */
+	public int getStart() {
+		return start;
+	}
+	
+	/**
+	 * @return the index in the source after the last character in the {@link TextSlice}
+	 */
+	public int getEnd() {
+		return end;
+	}
+	
+	@Override
+	public int length() {
+		return end - start;
+	}
+	
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= end - start)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + (end - start));
+		return source.charAt(start + index);
+	}
+	
+	@Override
+	public TextSlice subSequence(int start, int end) {
+		if (start < 0 || end > length() || start > end)
+			throw new IndexOutOfBoundsException("The range [" + start + ", " + end + ") is not within the slice (length " + length() + ")");
+		return new TextSlice(source, this.start + start, this.start + end);
+	}
+	
+	/**
+	 * Determines whether the {@link TextSlice} contains the same characters as the given {@link CharSequence}.
+	 * 
+	 * @param other
+	 *            the {@link CharSequence} to compare against
+	 * @return {@code true} if {@code other} has the same length and characters as the {@link TextSlice}
+	 */
+	public boolean contentEquals(CharSequence other) {
+		if (other.length() != end - start)
+			return false;
+		for (int i = start, j = 0; i < end; i++, j++)
+			if (source.charAt(i) != other.charAt(j))
+				return false;
+		return true;
+	}
+	
+	/**
+	 * Computes the same hash code as {@link String#hashCode()} would for the characters in the {@link TextSlice}.
+	 */
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if (h == 0)
+			for (int i = start; i < end; i++)
+				h = 31 * h + source.charAt(i);
+		return hash = h;
+	}
+	
+	/**
+	 * Two {@link TextSlice TextSlices} are equal if they contain the same characters, regardless of their sources.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o == this || (o instanceof TextSlice && o.hashCode() == hashCode() && contentEquals((TextSlice) o));
+	}
+	
+	/**
+	 * Copies the characters in the {@link TextSlice} into a new {@link String}.
+	 */
+	@Override
+	public String toString() {
+		return source.subSequence(start, end).toString();
+	}
+}